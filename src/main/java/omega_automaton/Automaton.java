@@ -17,15 +17,29 @@
 
 package omega_automaton;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 
@@ -37,6 +51,8 @@ import omega_automaton.acceptance.OmegaAcceptance;
 import omega_automaton.collections.Collections3;
 import omega_automaton.collections.valuationset.ValuationSet;
 import omega_automaton.collections.valuationset.ValuationSetFactory;
+import omega_automaton.collections.valuationset.SynchronizedValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSetScope;
 import omega_automaton.output.HOAConsumerExtended;
 
 public abstract class Automaton<S extends AutomatonState<S>, Acc extends OmegaAcceptance> {
@@ -45,11 +61,27 @@ public abstract class Automaton<S extends AutomatonState<S>, Acc extends OmegaAc
     protected S initialState;
     protected final Map<S, Map<Edge<S>, ValuationSet>> transitions;
     protected Acc acceptance;
+    private final Set<S> frontier = new LinkedHashSet<>();
+    @Nullable
+    private Map<S, Set<S>> predecessors;
+    // Number of edges in the rows of transitions, updated when rows are
+    // stored and when edges are removed.
+    private final LongAdder edges = new LongAdder();
+    // Owns the labels of the rows computed by this automaton, on any thread.
+    private ValuationSetScope scope = ValuationSetScope.create();
 
     protected final ValuationSetFactory valuationSetFactory;
 
     protected Automaton(Acc acceptance, ValuationSetFactory factory) {
-        transitions = new HashMap<>();
+        this(acceptance, factory, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Creates an automaton with a custom transition table, e.g. a
+     * {@link SpillingTransitionMap}.
+     */
+    protected Automaton(Acc acceptance, ValuationSetFactory factory, Map<S, Map<Edge<S>, ValuationSet>> transitions) {
+        this.transitions = transitions;
         valuationSetFactory = factory;
         this.acceptance = acceptance;
     }
@@ -59,6 +91,87 @@ public abstract class Automaton<S extends AutomatonState<S>, Acc extends OmegaAc
     }
 
     public void generate(@Nullable S initialState) {
+        generate(initialState, ExplorationLimits.UNLIMITED);
+    }
+
+    public boolean generate(ExplorationLimits limits) {
+        return generate(getInitialState(), limits);
+    }
+
+    /**
+     * Explores the state space reachable from {@param initialState} until it is
+     * complete or one of the {@param limits} is reached. In the latter case
+     * the automaton is left in a consistent state: every explored state has
+     * all its edges and the successors not explored yet are recorded in the
+     * frontier. A later call resumes the exploration from the frontier.
+     *
+     * @return true if the exploration is complete.
+     */
+    public boolean generate(@Nullable S initialState, ExplorationLimits limits) {
+        if (initialState != null && !transitions.containsKey(initialState)) {
+            frontier.add(initialState);
+        }
+
+        while (!frontier.isEmpty()) {
+            if (limits.isReached(transitions.size(), edges.sum())) {
+                return false;
+            }
+
+            S current = Collections3.getElement(frontier);
+
+            if (!transitions.containsKey(current)) {
+                Map<Edge<S>, ValuationSet> row = getSuccessors(current);
+
+                for (Edge<S> successor : row.keySet()) {
+                    if (!transitions.containsKey(successor.successor)) {
+                        frontier.add(successor.successor);
+                    }
+                }
+            }
+
+            frontier.remove(current);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the states found, but not explored by an interrupted
+     *         {@link Automaton#generate(AutomatonState, ExplorationLimits)}.
+     */
+    public Set<S> getFrontier() {
+        return Collections.unmodifiableSet(frontier);
+    }
+
+    public void generateParallel() {
+        generateParallel(getInitialState());
+    }
+
+    public void generateParallel(@Nullable S initialState) {
+        generateParallel(initialState, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Explores the state space reachable from {@param initialState} using the
+     * work-stealing {@param pool}. Each discovered state is expanded by its own
+     * task and the resulting {@link Automaton#transitions} are the same as the
+     * ones computed by {@link Automaton#generate(AutomatonState)}.
+     * <p>
+     * The rows are computed as in {@link Automaton#getSuccessors(AutomatonState)}
+     * by different threads at the same time, thus
+     * {@link AutomatonState#getSymbolicSuccessors()} and
+     * {@link AutomatonState#getSuccessors()} must be thread-safe. This requires
+     * a {@link ValuationSetFactory#isThreadSafe() thread-safe} factory, e.g. a
+     * {@link SynchronizedValuationSetFactory}, and a transition table that is
+     * a {@link ConcurrentMap}. Otherwise the state space is explored
+     * sequentially.
+     *
+     * @param initialState
+     *            the state to start the exploration from.
+     * @param pool
+     *            the pool executing the exploration tasks.
+     */
+    public void generateParallel(@Nullable S initialState, ForkJoinPool pool) {
         if (initialState == null) {
             return;
         }
@@ -68,20 +181,81 @@ public abstract class Automaton<S extends AutomatonState<S>, Acc extends OmegaAc
             return;
         }
 
-        Set<S> workSet = new HashSet<>();
-        workSet.add(initialState);
+        // Holding the monitor of a factory that is not thread-safe during
+        // each row would serialise the rows, the exploration gains nothing.
+        if (!allowsConcurrentReads()) {
+            generate(initialState);
+            return;
+        }
+
+        Set<S> discovered = ConcurrentHashMap.newKeySet();
+        discovered.add(initialState);
+        pool.invoke(new ExplorationTask(null, initialState, discovered));
+        frontier.removeIf(transitions::containsKey);
+    }
+
+    private final class ExplorationTask extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final S state;
+        private final Set<S> discovered;
+
+        ExplorationTask(@Nullable ExplorationTask parent, S state, Set<S> discovered) {
+            super(parent);
+            this.state = state;
+            this.discovered = discovered;
+        }
+
+        @Override
+        public void compute() {
+            Map<Edge<S>, ValuationSet> row = transitions.get(state);
+
+            if (row == null) {
+                Map<Edge<S>, ValuationSet> computed = computeSuccessors(state);
+                row = transitions.putIfAbsent(state, computed);
 
-        while (!workSet.isEmpty()) {
-            S current = Collections3.removeElement(workSet);
+                if (row == null) {
+                    row = computed;
+                    rowAdded(state, row);
+                } else {
+                    // Another thread stored the row first.
+                    computed.values().forEach(ValuationSet::free);
+                }
+            }
 
-            for (Edge<S> successor : getSuccessors(current).keySet()) {
-                if (!transitions.containsKey(successor.successor)) {
-                    workSet.add(successor.successor);
+            for (Edge<S> edge : row.keySet()) {
+                if (!transitions.containsKey(edge.successor) && discovered.add(edge.successor)) {
+                    addToPendingCount(1);
+                    new ExplorationTask(this, edge.successor, discovered).fork();
                 }
             }
+
+            tryComplete();
         }
     }
 
+    /**
+     * Runs {@param body} with the automaton as owner of the valuation sets it
+     * creates, e.g. labels of rows stored by subclasses. They are released by
+     * {@link Automaton#free()}, unless they are freed before.
+     *
+     * @return the result of {@param body}.
+     */
+    protected final <T> T owned(Supplier<T> body) {
+        return scope.call(body);
+    }
+
+    /**
+     * @return true if the stored rows can be read by several threads at the
+     *         same time, i.e. the transition table is a {@link ConcurrentMap}
+     *         and the factory is {@link ValuationSetFactory#isThreadSafe()
+     *         thread-safe}.
+     */
+    public boolean allowsConcurrentReads() {
+        return transitions instanceof ConcurrentMap && valuationSetFactory.isThreadSafe();
+    }
+
     public boolean hasSuccessors(S state) {
         return !getSuccessors(state).isEmpty();
     }
@@ -153,13 +327,30 @@ public abstract class Automaton<S extends AutomatonState<S>, Acc extends OmegaAc
         Map<Edge<S>, ValuationSet> row = transitions.get(state);
 
         if (row == null) {
-            row = state.getSuccessors();
-            transitions.put(state, row);
+            row = computeSuccessors(state);
+            putRow(state, row);
         }
 
         return row;
     }
 
+    /**
+     * Computes the row of {@param state}. Its labels are owned by the
+     * automaton and released by {@link Automaton#free()}; all other sets
+     * created during the computation and not freed by the state are released
+     * when the row is computed.
+     */
+    private Map<Edge<S>, ValuationSet> computeSuccessors(S state) {
+        return scope.call(() -> {
+            try (ValuationSetScope computation = ValuationSetScope.open()) {
+                // Prefers the symbolic successors and calls them only once.
+                Map<Edge<S>, ValuationSet> row = state.getSuccessors();
+                row.values().forEach(computation::escape);
+                return row;
+            }
+        });
+    }
+
     public int size() {
         return transitions.size();
     }
@@ -200,20 +391,206 @@ public abstract class Automaton<S extends AutomatonState<S>, Acc extends OmegaAc
         if (states.contains(initialState)) {
             initialState = null;
             transitions.clear();
+            frontier.clear();
+            edges.reset();
+
+            if (predecessors != null) {
+                predecessors.clear();
+            }
+        } else if (predecessors != null) {
+            removeIndexed(new HashSet<>(states));
         } else {
             removeStatesIf(states::contains);
         }
     }
 
     public void removeStatesIf(Predicate<S> predicate) {
-        transitions.keySet().removeIf(predicate);
-        transitions.forEach((k, v) -> v.keySet().removeIf(t -> predicate.test(t.successor)));
+        if (predecessors != null) {
+            Set<S> removed = new HashSet<>();
+            transitions.keySet().forEach(state -> {
+                if (predicate.test(state)) {
+                    removed.add(state);
+                }
+            });
+
+            // States that are not explored yet.
+            predecessors.keySet().forEach(state -> {
+                if (predicate.test(state)) {
+                    removed.add(state);
+                }
+            });
+            frontier.forEach(state -> {
+                if (predicate.test(state)) {
+                    removed.add(state);
+                }
+            });
+
+            removeIndexed(removed);
+
+            if (predicate.test(initialState)) {
+                initialState = null;
+            }
+
+            return;
+        }
+
+        List<S> removed = transitions.keySet().stream().filter(predicate).collect(Collectors.toList());
+        removed.forEach(state -> {
+            edges.add(-transitions.get(state).size());
+            transitions.keySet().remove(state);
+        });
+        frontier.removeIf(predicate);
+        transitions.values().forEach(row -> removeEdgesIf(row, predicate));
 
         if (predicate.test(initialState)) {
             initialState = null;
         }
     }
 
+    /**
+     * Removes {@param removed} using the predecessor index: only the rows of
+     * predecessors of removed states are visited.
+     */
+    private void removeIndexed(Set<S> removed) {
+        for (S state : removed) {
+            Set<S> statePredecessors = predecessors.remove(state);
+
+            if (statePredecessors != null) {
+                for (S predecessor : statePredecessors) {
+                    Map<Edge<S>, ValuationSet> row = removed.contains(predecessor) ? null : transitions.get(predecessor);
+
+                    if (row != null) {
+                        removeEdgesIf(row, removed::contains);
+                    }
+                }
+            }
+
+            Map<Edge<S>, ValuationSet> row = transitions.get(state);
+
+            if (row != null) {
+                edges.add(-row.size());
+
+                for (Edge<S> edge : row.keySet()) {
+                    Set<S> successorPredecessors = predecessors.get(edge.successor);
+
+                    if (successorPredecessors != null) {
+                        successorPredecessors.remove(state);
+                    }
+                }
+
+                transitions.keySet().remove(state);
+            }
+        }
+
+        frontier.removeAll(removed);
+
+        if (removed.contains(initialState)) {
+            initialState = null;
+        }
+    }
+
+    private void removeEdgesIf(Map<Edge<S>, ValuationSet> row, Predicate<S> predicate) {
+        int size = row.size();
+        row.keySet().removeIf(edge -> predicate.test(edge.successor));
+        edges.add(row.size() - size);
+    }
+
+    /**
+     * Enables the predecessor index, which is built from the explored states
+     * and from then on maintained by exploration and state removal. With the
+     * index, {@link Automaton#removeStates(Collection)} and
+     * {@link Automaton#removeStatesIf(Predicate)} only visit the edges leading
+     * to removed states.
+     */
+    public void enablePredecessorIndex() {
+        if (predecessors != null) {
+            return;
+        }
+
+        predecessors = new ConcurrentHashMap<>();
+
+        for (S state : getStates()) {
+            indexRow(state, getSuccessors(state));
+        }
+    }
+
+    public boolean hasPredecessorIndex() {
+        return predecessors != null;
+    }
+
+    /**
+     * Stores {@param row} as the row of {@param state}, which has no row yet.
+     * Subclasses modifying {@link Automaton#transitions} directly have to use
+     * this method for new rows and report edges added to existing rows with
+     * {@link Automaton#addEdge(AutomatonState, AutomatonState)}, such that the
+     * edge count and the predecessor index stay consistent.
+     */
+    protected void putRow(S state, Map<Edge<S>, ValuationSet> row) {
+        transitions.put(state, row);
+        rowAdded(state, row);
+    }
+
+    /**
+     * Records that an edge from {@param state} to {@param successor} was added
+     * to the stored row of {@param state}.
+     */
+    protected void addEdge(S state, S successor) {
+        edges.increment();
+        addPredecessor(state, successor);
+    }
+
+    private void rowAdded(S state, Map<Edge<S>, ValuationSet> row) {
+        edges.add(row.size());
+        indexRow(state, row);
+    }
+
+    private void addPredecessor(S state, S successor) {
+        if (predecessors != null) {
+            predecessors.computeIfAbsent(successor, k -> ConcurrentHashMap.newKeySet()).add(state);
+        }
+    }
+
+    private void indexRow(S state, Map<Edge<S>, ValuationSet> row) {
+        if (predecessors != null) {
+            row.keySet().forEach(edge -> addPredecessor(state, edge.successor));
+        }
+    }
+
+    /**
+     * Returns the explored states with an edge to {@param state}. Enables the
+     * predecessor index, if necessary.
+     */
+    public Set<S> getPredecessors(S state) {
+        enablePredecessorIndex();
+        Set<S> statePredecessors = predecessors.get(state);
+        return statePredecessors == null ? Collections.emptySet() : Collections.unmodifiableSet(statePredecessors);
+    }
+
+    /**
+     * Computes the explored states from which one of the {@param targets} is
+     * reachable, including the targets themselves. Enables the predecessor
+     * index, if necessary.
+     */
+    public Set<S> getCoReachableStates(Collection<S> targets) {
+        enablePredecessorIndex();
+        Set<S> states = new HashSet<>(targets);
+        Deque<S> workDeque = new ArrayDeque<>(states);
+
+        while (!workDeque.isEmpty()) {
+            Set<S> statePredecessors = predecessors.get(workDeque.remove());
+
+            if (statePredecessors != null) {
+                for (S predecessor : statePredecessors) {
+                    if (states.add(predecessor)) {
+                        workDeque.add(predecessor);
+                    }
+                }
+            }
+        }
+
+        return states;
+    }
+
     public ValuationSetFactory getFactory() {
         return valuationSetFactory;
     }
@@ -267,6 +644,72 @@ public abstract class Automaton<S extends AutomatonState<S>, Acc extends OmegaAc
         hoa.done();
     }
 
+    /**
+     * Explores the automaton and writes it to {@param ho} at the same time.
+     * States are emitted in BFS order from the initial state, which is also
+     * the order of their numbers, as soon as their row is computed. Stored
+     * rows, as returned by
+     * {@link Automaton#getStoredSuccessors(AutomatonState)}, are written as
+     * they are. All other rows are computed, written and released, so only
+     * the set of visited states is kept in memory. The number of states is
+     * not announced in the header.
+     * <p>
+     * Only the edges of the rows are written: overrides of
+     * {@link Automaton#toHOABodyEdge(AutomatonState, HOAConsumerExtended)}
+     * are not used.
+     */
+    public void toHOAStreaming(HOAConsumer ho, @Nullable BiMap<String, Integer> aliases) {
+        S initialState = getInitialState();
+        HOAConsumerExtended hoa = new HOAConsumerExtended(ho, valuationSetFactory, aliases, acceptance != null ? acceptance : new AllAcceptance(), initialState, -1);
+
+        if (initialState == null) {
+            return;
+        }
+
+        Set<S> visited = new HashSet<>();
+        Deque<S> workDeque = new ArrayDeque<>();
+        visited.add(initialState);
+        workDeque.add(initialState);
+
+        while (!workDeque.isEmpty()) {
+            S state = workDeque.remove();
+            Map<Edge<S>, ValuationSet> row = getStoredSuccessors(state);
+            boolean computed = row == null;
+
+            if (computed) {
+                row = computeSuccessors(state);
+            }
+
+            hoa.addState(state);
+
+            row.forEach((edge, label) -> {
+                hoa.addEdge(label, edge.successor, edge.getAcceptance());
+
+                if (visited.add(edge.successor)) {
+                    workDeque.add(edge.successor);
+                }
+            });
+
+            hoa.stateDone();
+
+            if (computed) {
+                row.values().forEach(ValuationSet::free);
+            }
+        }
+
+        hoa.done();
+    }
+
+    /**
+     * @return the row of {@param state}, if it is already stored, and null
+     *         otherwise. Subclasses storing rows outside of
+     *         {@link Automaton#transitions} override this method.
+     */
+    @Nullable
+    protected Map<Edge<S>, ValuationSet> getStoredSuccessors(S state) {
+        return transitions.get(state);
+    }
+
     public void toHOABody(HOAConsumerExtended hoa) {
         for (S s : getStates()) {
             hoa.addState(s);
@@ -283,19 +726,46 @@ public abstract class Automaton<S extends AutomatonState<S>, Acc extends OmegaAc
      * @param hoa
      */
     protected void toHOABodyEdge(S state, HOAConsumerExtended hoa) {
-        getSuccessors(state).forEach((k, v) -> hoa.addEdge(v, k.successor, k.acceptance));
+        getSuccessors(state).forEach((k, v) -> hoa.addEdge(v, k.successor, k.getAcceptance()));
     }
 
     public void free() {
         initialState = null;
         acceptance = null;
-
-        transitions.forEach((k, v) -> {
-            k.free();
-            v.forEach((e, val) -> {
-                e.successor.free();
-                val.free();
+        frontier.clear();
+        predecessors = null;
+
+        // The labels of computed rows are released in bulk.
+        scope.close();
+        scope = ValuationSetScope.create();
+
+        // The remaining states and labels, e.g. of rows stored by
+        // subclasses, are released once each, even if they occur in several
+        // rows. The rows are removed from the transition table, such that a
+        // table owning its labels does not free them again.
+        List<S> explored = new ArrayList<>(transitions.keySet());
+        Set<S> states = new HashSet<>(explored);
+        Set<ValuationSet> labels = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (S state : explored) {
+            transitions.remove(state).forEach((edge, label) -> {
+                states.add(edge.successor);
+                labels.add(label);
             });
-        });
+        }
+
+        edges.reset();
+
+        states.forEach(S::free);
+        labels.forEach(ValuationSet::free);
+
+        // A table holding resources, e.g. a spill file, is closed as well.
+        if (transitions instanceof Closeable) {
+            try {
+                ((Closeable) transitions).close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
     }
 }
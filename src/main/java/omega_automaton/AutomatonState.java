@@ -24,7 +24,6 @@ import omega_automaton.collections.valuationset.ValuationSetFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.BitSet;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 // TODO: migrate to abstract class?
@@ -51,30 +50,40 @@ public interface AutomatonState<S> {
     @Nullable
     Edge<S> getSuccessor(BitSet valuation);
 
+    /**
+     * Compute all outgoing edges of the state symbolically, e.g. by BDD
+     * operations on a formula. The labels have to be created using
+     * {@link AutomatonState#getFactory()}. Implement this method, if the edges
+     * can be obtained without enumerating valuations; it is preferred over
+     * {@link AutomatonState#getSuccessors()} by {@link Automaton}. When called
+     * by {@link Automaton}, the labels of the result are owned by the
+     * automaton and all other sets created by the call are released
+     * afterwards; they must not be retained by the state.
+     *
+     * @return a map from edges to their labels or null, if the state does not
+     *         support symbolic successor computation.
+     */
+    @Nullable
+    default Map<Edge<S>, ValuationSet> getSymbolicSuccessors() {
+        return null;
+    }
+
+    /**
+     * Compute all outgoing edges of the state. If available, the result of
+     * {@link AutomatonState#getSymbolicSuccessors()} is returned. Otherwise
+     * the default implementation expands the sensitive alphabet variable by
+     * variable and calls {@link AutomatonState#getSuccessor(BitSet)} for each
+     * of its valuations. The edge labels are built directly from the
+     * cofactors and not from one cube per valuation.
+     *
+     * @return a map from edges to their labels. Edges are ordered by the first
+     *         valuation (in the order of {@link Collections3#powerSet(BitSet)})
+     *         taking them.
+     */
     @Nonnull
     default Map<Edge<S>, ValuationSet> getSuccessors() {
-        ValuationSetFactory factory = getFactory();
-        BitSet sensitiveAlphabet = getSensitiveAlphabet();
-        Map<Edge<S>, ValuationSet> successors = new LinkedHashMap<>();
-
-        for (BitSet valuation : Collections3.powerSet(sensitiveAlphabet)) {
-            Edge<S> successor = getSuccessor(valuation);
-
-            if (successor == null) {
-                continue;
-            }
-
-            ValuationSet oldVs = successors.get(successor);
-            ValuationSet newVs = factory.createValuationSet(valuation, sensitiveAlphabet);
-
-            if (oldVs == null) {
-                successors.put(successor, newVs);
-            } else {
-                oldVs.addAllWith(newVs);
-            }
-        }
-
-        return successors;
+        Map<Edge<S>, ValuationSet> successors = getSymbolicSuccessors();
+        return successors == null ? ShannonExpansion.getSuccessors(this) : successors;
     }
 
     default void free() {
@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import omega_automaton.acceptance.OmegaAcceptance;
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.output.HOAConsumerExtended;
+
+/**
+ * A copy of an explored automaton that stores the transition relation in
+ * compressed-sparse-row form. States are numbered densely in BFS order
+ * starting from the initial state. The outgoing edges of the state with id
+ * {@code i} occupy the range {@code [getRowStart(i), getRowEnd(i))} of three
+ * primitive arrays holding the successor ids, the ids of the acceptance masks
+ * and the ids of the labels. Equal acceptance masks and equal labels are only
+ * stored once, thus there is one {@link ValuationSet} per distinct label and
+ * not per edge.
+ * <p>
+ * Algorithms should iterate over the ids; {@link
+ * CompactAutomaton#getSuccessors(AutomatonState)} returns a read-only view of
+ * a row, which creates the edges on the fly. Removing states renumbers the
+ * remaining states, keeping their relative order.
+ */
+public class CompactAutomaton<S extends AutomatonState<S>, Acc extends OmegaAcceptance> extends Automaton<S, Acc> {
+
+    private final List<S> states;
+
+    // Open addressing table from states to ids: each slot holds id + 1 or 0,
+    // if it is empty.
+    private int[] table;
+
+    private int[] rowOffsets;
+    private int[] successors;
+    private int[] masks;
+    private int[] labels;
+
+    private final BitSet[] acceptancePool;
+    private final ValuationSet[] labelPool;
+
+    private CompactAutomaton(Automaton<S, Acc> automaton) {
+        super(automaton.getAcceptance(), automaton.getFactory());
+        initialState = automaton.getInitialState();
+        states = new ArrayList<>();
+        table = new int[16];
+
+        // First pass: number the states in BFS order and count the edges.
+        if (initialState != null) {
+            addState(initialState);
+        }
+
+        Iterator<S> remaining = automaton.getStates().iterator();
+        int edges = 0;
+        int next = 0;
+
+        while (true) {
+            for (; next < states.size(); next++) {
+                Map<Edge<S>, ValuationSet> row = automaton.getSuccessors(states.get(next));
+                edges += row.size();
+
+                for (Edge<S> edge : row.keySet()) {
+                    if (getId(edge.successor) == -1) {
+                        addState(edge.successor);
+                    }
+                }
+            }
+
+            // Continue with states not reachable from the initial state.
+            S state = null;
+
+            while (state == null && remaining.hasNext()) {
+                state = remaining.next();
+
+                if (getId(state) != -1) {
+                    state = null;
+                }
+            }
+
+            if (state == null) {
+                break;
+            }
+
+            addState(state);
+        }
+
+        // Second pass: fill the arrays and intern masks and labels.
+        rowOffsets = new int[states.size() + 1];
+        successors = new int[edges];
+        masks = new int[edges];
+        labels = new int[edges];
+
+        Map<BitSet, Integer> acceptanceIds = new HashMap<>();
+        Map<ValuationSet, Integer> labelIds = new HashMap<>();
+        List<BitSet> acceptanceList = new ArrayList<>();
+        List<ValuationSet> labelList = new ArrayList<>();
+        int edge = 0;
+
+        for (int i = 0; i < states.size(); i++) {
+            rowOffsets[i] = edge;
+
+            for (Map.Entry<Edge<S>, ValuationSet> entry : automaton.getSuccessors(states.get(i)).entrySet()) {
+                BitSet mask = entry.getKey().getAcceptance();
+                ValuationSet label = entry.getValue();
+
+                Integer maskId = acceptanceIds.get(mask);
+
+                if (maskId == null) {
+                    maskId = acceptanceList.size();
+                    acceptanceIds.put(mask, maskId);
+                    acceptanceList.add(mask);
+                }
+
+                Integer labelId = labelIds.get(label);
+
+                if (labelId == null) {
+                    labelId = labelList.size();
+                    ValuationSet copy = owned(label::copy);
+                    labelIds.put(copy, labelId);
+                    labelList.add(copy);
+                }
+
+                successors[edge] = getId(entry.getKey().successor);
+                masks[edge] = maskId;
+                labels[edge] = labelId;
+                edge++;
+            }
+        }
+
+        rowOffsets[states.size()] = edge;
+        acceptancePool = acceptanceList.toArray(new BitSet[acceptanceList.size()]);
+        labelPool = labelList.toArray(new ValuationSet[labelList.size()]);
+    }
+
+    /**
+     * Creates a compacted copy of {@param automaton}. All states reachable from
+     * the initial state and all states already present in the automaton are
+     * explored. The labels are copied, thus {@param automaton} can be freed
+     * afterwards.
+     */
+    public static <S extends AutomatonState<S>, Acc extends OmegaAcceptance> CompactAutomaton<S, Acc> of(Automaton<S, Acc> automaton) {
+        return new CompactAutomaton<>(automaton);
+    }
+
+    private void addState(S state) {
+        states.add(state);
+
+        if (2 * states.size() > table.length) {
+            table = new int[2 * table.length];
+
+            for (int id = 0; id < states.size(); id++) {
+                insert(id);
+            }
+        } else {
+            insert(states.size() - 1);
+        }
+    }
+
+    private void insert(int id) {
+        int slot = slot(states.get(id));
+
+        while (table[slot] != 0) {
+            slot = (slot + 1) & (table.length - 1);
+        }
+
+        table[slot] = id + 1;
+    }
+
+    private int slot(Object state) {
+        int hash = state.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (table.length - 1);
+    }
+
+    /**
+     * @return the id of {@param state} or -1, if it is not a state of the
+     *         automaton.
+     */
+    public int getId(@Nullable S state) {
+        if (state == null) {
+            return -1;
+        }
+
+        for (int slot = slot(state); table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+            int id = table[slot] - 1;
+
+            if (states.get(id).equals(state)) {
+                return id;
+            }
+        }
+
+        return -1;
+    }
+
+    public S getState(int id) {
+        return states.get(id);
+    }
+
+    /**
+     * @return the id of the initial state or -1, if there is no initial state.
+     */
+    public int getInitialStateId() {
+        return getId(initialState);
+    }
+
+    public int getRowStart(int id) {
+        return rowOffsets[id];
+    }
+
+    public int getRowEnd(int id) {
+        return rowOffsets[id + 1];
+    }
+
+    public int getSuccessorId(int edge) {
+        return successors[edge];
+    }
+
+    /**
+     * @return the id of the acceptance mask of {@param edge}, which is equal
+     *         for two edges iff their masks are equal.
+     */
+    public int getMaskId(int edge) {
+        return masks[edge];
+    }
+
+    /**
+     * @return a copy of the acceptance mask with id {@param maskId}.
+     */
+    public BitSet getMask(int maskId) {
+        return (BitSet) acceptancePool[maskId].clone();
+    }
+
+    public int getMaskCount() {
+        return acceptancePool.length;
+    }
+
+    /**
+     * @return a copy of the acceptance marks of {@param edge}.
+     */
+    public BitSet getEdgeAcceptance(int edge) {
+        return getMask(masks[edge]);
+    }
+
+    /**
+     * @return the id of the label of {@param edge}, which is equal for two
+     *         edges iff their labels are equal.
+     */
+    public int getLabelId(int edge) {
+        return labels[edge];
+    }
+
+    public ValuationSet getLabel(int labelId) {
+        return labelPool[labelId];
+    }
+
+    public int getLabelCount() {
+        return labelPool.length;
+    }
+
+    public ValuationSet getEdgeLabel(int edge) {
+        return labelPool[labels[edge]];
+    }
+
+    public int getEdgeCount() {
+        return successors.length;
+    }
+
+    @Override
+    public boolean generate(@Nullable S initialState, ExplorationLimits limits) {
+        // All states are already explored.
+        return true;
+    }
+
+    @Override
+    public void generateParallel(@Nullable S initialState, ForkJoinPool pool) {
+        // All states are already explored.
+    }
+
+    @Nullable
+    @Override
+    public Edge<S> getSuccessor(S state, BitSet valuation) {
+        int id = getId(state);
+
+        if (id == -1) {
+            return null;
+        }
+
+        for (int edge = rowOffsets[id]; edge < rowOffsets[id + 1]; edge++) {
+            if (getEdgeLabel(edge).contains(valuation)) {
+                return createEdge(edge);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Set<S> getSuccessors(S state, BitSet valuation) {
+        int id = getId(state);
+        Set<S> result = new HashSet<>();
+
+        if (id == -1) {
+            return result;
+        }
+
+        for (int edge = rowOffsets[id]; edge < rowOffsets[id + 1]; edge++) {
+            if (getEdgeLabel(edge).contains(valuation)) {
+                result.add(states.get(successors[edge]));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a read-only view of the row of {@param state}. The edges are
+     * created while iterating; use the id-based methods to avoid this.
+     */
+    @Override
+    public Map<Edge<S>, ValuationSet> getSuccessors(S state) {
+        int id = getId(state);
+        return id == -1 ? Collections.emptyMap() : new Row(id);
+    }
+
+    @Nullable
+    @Override
+    protected Map<Edge<S>, ValuationSet> getStoredSuccessors(S state) {
+        int id = getId(state);
+        return id == -1 ? null : new Row(id);
+    }
+
+    @Override
+    public int size() {
+        return states.size();
+    }
+
+    @Override
+    public Set<S> getStates() {
+        return new HashSet<>(states);
+    }
+
+    @Override
+    public void removeStates(Collection<S> states) {
+        if (states.contains(initialState)) {
+            removeStatesIf(state -> true);
+        } else {
+            removeStatesIf(states::contains);
+        }
+    }
+
+    /**
+     * Removes the states matching {@param predicate} and the edges leading to
+     * them. The arrays are rebuilt and the remaining states are renumbered in
+     * their previous order. The labels stay in the pool until the automaton
+     * is freed.
+     */
+    @Override
+    public void removeStatesIf(Predicate<S> predicate) {
+        int[] renaming = new int[states.size()];
+        List<S> kept = new ArrayList<>();
+
+        for (int id = 0; id < states.size(); id++) {
+            renaming[id] = predicate.test(states.get(id)) ? -1 : kept.size();
+
+            if (renaming[id] != -1) {
+                kept.add(states.get(id));
+            }
+        }
+
+        if (kept.size() == states.size()) {
+            return;
+        }
+
+        int[] newOffsets = new int[kept.size() + 1];
+        int[] newSuccessors = new int[successors.length];
+        int[] newMasks = new int[successors.length];
+        int[] newLabels = new int[successors.length];
+        int edges = 0;
+
+        for (int id = 0; id < states.size(); id++) {
+            if (renaming[id] == -1) {
+                continue;
+            }
+
+            newOffsets[renaming[id]] = edges;
+
+            for (int edge = rowOffsets[id]; edge < rowOffsets[id + 1]; edge++) {
+                if (renaming[successors[edge]] != -1) {
+                    newSuccessors[edges] = renaming[successors[edge]];
+                    newMasks[edges] = masks[edge];
+                    newLabels[edges] = labels[edge];
+                    edges++;
+                }
+            }
+        }
+
+        newOffsets[kept.size()] = edges;
+        rowOffsets = newOffsets;
+        successors = Arrays.copyOf(newSuccessors, edges);
+        masks = Arrays.copyOf(newMasks, edges);
+        labels = Arrays.copyOf(newLabels, edges);
+
+        if (initialState != null && renaming[getId(initialState)] == -1) {
+            initialState = null;
+        }
+
+        states.clear();
+        table = new int[16];
+        kept.forEach(this::addState);
+    }
+
+    @Override
+    public void toHOABody(HOAConsumerExtended hoa) {
+        for (int id = 0; id < states.size(); id++) {
+            hoa.addState(states.get(id));
+            toHOABodyEdges(id, hoa);
+            hoa.stateDone();
+        }
+    }
+
+    @Override
+    protected void toHOABodyEdge(S state, HOAConsumerExtended hoa) {
+        int id = getId(state);
+
+        if (id != -1) {
+            toHOABodyEdges(id, hoa);
+        }
+    }
+
+    private void toHOABodyEdges(int id, HOAConsumerExtended hoa) {
+        for (int edge = rowOffsets[id]; edge < rowOffsets[id + 1]; edge++) {
+            hoa.addEdge(getEdgeLabel(edge), states.get(successors[edge]), getEdgeAcceptance(edge));
+        }
+    }
+
+    @Override
+    public void free() {
+        initialState = null;
+        acceptance = null;
+
+        states.forEach(S::free);
+        freeLabels();
+    }
+
+    /**
+     * Frees the copied labels, but not the states, which are shared with the
+     * automaton this one was created from.
+     */
+    public void freeLabels() {
+        for (ValuationSet label : labelPool) {
+            label.free();
+        }
+    }
+
+    private Edge<S> createEdge(int edge) {
+        return Edge.of(states.get(successors[edge]), acceptancePool[masks[edge]]);
+    }
+
+    private final class Row extends AbstractMap<Edge<S>, ValuationSet> {
+
+        private final int id;
+
+        Row(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Set<Map.Entry<Edge<S>, ValuationSet>> entrySet() {
+            return new AbstractSet<Map.Entry<Edge<S>, ValuationSet>>() {
+                @Override
+                public Iterator<Map.Entry<Edge<S>, ValuationSet>> iterator() {
+                    return new Iterator<Map.Entry<Edge<S>, ValuationSet>>() {
+                        private int edge = rowOffsets[id];
+
+                        @Override
+                        public boolean hasNext() {
+                            return edge < rowOffsets[id + 1];
+                        }
+
+                        @Override
+                        public Map.Entry<Edge<S>, ValuationSet> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+
+                            Map.Entry<Edge<S>, ValuationSet> entry = new SimpleImmutableEntry<>(createEdge(edge), getEdgeLabel(edge));
+                            edge++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return rowOffsets[id + 1] - rowOffsets[id];
+                }
+            };
+        }
+    }
+}
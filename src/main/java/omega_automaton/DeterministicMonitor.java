@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import omega_automaton.acceptance.OmegaAcceptance;
+import omega_automaton.collections.valuationset.DecisionDiagram;
+import omega_automaton.collections.valuationset.ValuationSet;
+
+/**
+ * A compiled form of an explored deterministic automaton for running it as a
+ * monitor. Valuations are encoded as {@code long}, where bit {@code i} is the
+ * value of atomic proposition {@code i}. Each state has a reduced
+ * {@link DecisionDiagram} over the atomic propositions its labels depend on;
+ * its leaves are edges, which are stored with the successor id and the
+ * acceptance marks as {@code long} mask. Steps do not allocate.
+ */
+public class DeterministicMonitor<S extends AutomatonState<S>> {
+
+    private final CompactAutomaton<S, ?> automaton;
+    private final DecisionDiagram diagram;
+    private final int[] roots;
+    private final long[] acceptance;
+
+    private DeterministicMonitor(Automaton<S, ? extends OmegaAcceptance> automaton) {
+        if (automaton.getFactory().getSize() > Long.SIZE) {
+            throw new IllegalArgumentException("Monitors support at most 64 atomic propositions.");
+        }
+
+        this.automaton = CompactAutomaton.of(automaton);
+        this.diagram = new DecisionDiagram(automaton.getFactory());
+        this.roots = new int[this.automaton.size()];
+        this.acceptance = new long[this.automaton.getEdgeCount()];
+
+        for (int edge = 0; edge < acceptance.length; edge++) {
+            BitSet mask = this.automaton.getEdgeAcceptance(edge);
+
+            if (mask.length() > Long.SIZE) {
+                throw new IllegalArgumentException("Monitors support at most 64 acceptance sets.");
+            }
+
+            acceptance[edge] = mask.isEmpty() ? 0L : mask.toLongArray()[0];
+        }
+
+        // The leaves of the diagram of a state are the positions in its row.
+        for (int state = 0; state < roots.length; state++) {
+            List<ValuationSet> labels = new ArrayList<>();
+
+            for (int edge = this.automaton.getRowStart(state); edge < this.automaton.getRowEnd(state); edge++) {
+                labels.add(this.automaton.getEdgeLabel(edge));
+            }
+
+            try {
+                roots[state] = diagram.compile(labels);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Automaton is not deterministic: " + this.automaton.getState(state), ex);
+            }
+        }
+    }
+
+    /**
+     * Compiles the explored part of {@param automaton} into a monitor. States
+     * not yet explored are explored.
+     *
+     * @throws IllegalArgumentException
+     *             if the automaton is not deterministic or uses more than 64
+     *             atomic propositions or acceptance sets.
+     */
+    public static <S extends AutomatonState<S>> DeterministicMonitor<S> of(Automaton<S, ? extends OmegaAcceptance> automaton) {
+        return new DeterministicMonitor<>(automaton);
+    }
+
+    /**
+     * Frees the labels copied from the automaton. The states are not freed, as
+     * they are shared with the automaton. The monitor must not be used
+     * afterwards.
+     */
+    public void free() {
+        automaton.freeLabels();
+    }
+
+    /**
+     * @return the id of the initial state or -1, if the automaton has no
+     *         initial state.
+     */
+    public int getInitialState() {
+        return automaton.getInitialStateId();
+    }
+
+    public int getId(S state) {
+        return automaton.getId(state);
+    }
+
+    public S getState(int id) {
+        return automaton.getState(id);
+    }
+
+    public int size() {
+        return roots.length;
+    }
+
+    /**
+     * Looks up the edge taken from {@param state} when reading {@param valuation}.
+     *
+     * @return the edge id or -1, if there is no such edge.
+     */
+    public int getEdge(int state, long valuation) {
+        int position = diagram.evaluate(roots[state], valuation);
+        return position == DecisionDiagram.NONE ? -1 : automaton.getRowStart(state) + position;
+    }
+
+    public int getSuccessor(int edge) {
+        return automaton.getSuccessorId(edge);
+    }
+
+    public long getAcceptance(int edge) {
+        return acceptance[edge];
+    }
+
+    /**
+     * @return the id of the successor or -1, if there is no successor.
+     */
+    public int step(int state, long valuation) {
+        int edge = getEdge(state, valuation);
+        return edge == -1 ? -1 : automaton.getSuccessorId(edge);
+    }
+
+    /**
+     * Reads the whole {@param trace} starting in {@param state}.
+     *
+     * @return the id of the reached state or -1, if the run got stuck.
+     */
+    public int run(int state, long[] trace) {
+        return run(state, trace, 0, trace.length, null);
+    }
+
+    /**
+     * Reads {@code trace[from]} to {@code trace[to - 1]} starting in
+     * {@param state}. If {@param acceptanceMarks} is not null, the acceptance
+     * marks of the i-th step are written to {@code acceptanceMarks[i - from]}.
+     *
+     * @return the id of the reached state or -1, if the run got stuck.
+     */
+    public int run(int state, long[] trace, int from, int to, long[] acceptanceMarks) {
+        int current = state;
+
+        for (int i = from; i < to && current != -1; i++) {
+            int edge = getEdge(current, trace[i]);
+
+            if (edge == -1) {
+                return -1;
+            }
+
+            if (acceptanceMarks != null) {
+                acceptanceMarks[i - from] = acceptance[edge];
+            }
+
+            current = automaton.getSuccessorId(edge);
+        }
+
+        return current;
+    }
+}
@@ -19,15 +19,109 @@ package omega_automaton;
 
 import java.util.BitSet;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * An immutable edge of an automaton. If the marks fit into 64 sets, they are
+ * additionally kept as {@code long} mask, which is used for comparison.
+ * <p>
+ * Use {@link Edge#of(Object, BitSet)} to obtain hash-consed edges that share
+ * canonical acceptance bit sets. The shared bit sets are not exposed:
+ * {@link Edge#getAcceptance()} returns a copy.
+ */
 public class Edge<S> {
 
+    private static final ConcurrentMap<Long, BitSet> MASKS = new ConcurrentHashMap<>();
+    private static final Interner<Edge<?>> EDGES = Interners.newWeakInterner();
+
     public final S successor;
-    public final BitSet acceptance;
+    private final BitSet acceptance;
+
+    private final long mask;
+    private final boolean wide;
+    private final int hashCode;
 
+    /**
+     * Creates an edge that is equal to {@code Edge.of(successor, acceptance)}
+     * but not shared with other edges.
+     *
+     * @deprecated Use {@link Edge#of(Object, BitSet)}, which returns the
+     *             canonical edge. The marks are read by
+     *             {@link Edge#getAcceptance()}.
+     */
+    @Deprecated
     public Edge(S successor, BitSet acceptance) {
+        this(successor, (BitSet) acceptance.clone(), acceptance.length() > Long.SIZE);
+    }
+
+    private Edge(S successor, BitSet acceptance, boolean wide) {
         this.successor = successor;
         this.acceptance = acceptance;
+        this.wide = wide;
+        this.mask = wide || acceptance.isEmpty() ? 0L : acceptance.toLongArray()[0];
+        this.hashCode = 31 * Objects.hashCode(successor) + (wide ? acceptance.hashCode() : Long.hashCode(mask));
+    }
+
+    /**
+     * Returns the canonical edge to {@param successor} with the given marks.
+     */
+    public static <S> Edge<S> of(S successor, BitSet acceptance) {
+        if (acceptance.length() <= Long.SIZE) {
+            return of(successor, acceptance.isEmpty() ? 0L : acceptance.toLongArray()[0]);
+        }
+
+        return intern(new Edge<>(successor, (BitSet) acceptance.clone(), true));
+    }
+
+    /**
+     * Returns the canonical edge to {@param successor} with the marks of
+     * {@param mask}, where bit {@code i} stands for acceptance set {@code i}.
+     */
+    public static <S> Edge<S> of(S successor, long mask) {
+        BitSet acceptance = MASKS.computeIfAbsent(mask, key -> BitSet.valueOf(new long[] { key }));
+        return intern(new Edge<>(successor, acceptance, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> Edge<S> intern(Edge<S> edge) {
+        return (Edge<S>) EDGES.intern(edge);
+    }
+
+    /**
+     * Returns the canonical edge to {@param successor} with the marks of this
+     * edge.
+     */
+    public <T> Edge<T> withSuccessor(T successor) {
+        return wide ? intern(new Edge<>(successor, acceptance, true)) : of(successor, mask);
+    }
+
+    /**
+     * @return a copy of the acceptance marks.
+     */
+    public BitSet getAcceptance() {
+        return (BitSet) acceptance.clone();
+    }
+
+    public boolean inSet(int i) {
+        return acceptance.get(i);
+    }
+
+    /**
+     * @return the acceptance marks as {@code long}, if there are at most 64
+     *         acceptance sets.
+     * @throws IllegalStateException
+     *             if a mark above 63 is set.
+     */
+    public long getAcceptanceMask() {
+        if (wide) {
+            throw new IllegalStateException("Acceptance marks do not fit into a long: " + acceptance);
+        }
+
+        return mask;
     }
 
     @Override
@@ -37,12 +131,16 @@ public class Edge<S> {
         if (o == null || getClass() != o.getClass())
             return false;
         Edge<?> tuple = (Edge<?>) o;
-        return Objects.equals(successor, tuple.successor) && Objects.equals(acceptance, tuple.acceptance);
+
+        if (hashCode != tuple.hashCode || wide != tuple.wide)
+            return false;
+
+        return (wide ? acceptance.equals(tuple.acceptance) : mask == tuple.mask) && Objects.equals(successor, tuple.successor);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(successor, acceptance);
+        return hashCode;
     }
 
     @Override
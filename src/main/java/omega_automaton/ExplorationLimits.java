@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Immutable budget for {@link Automaton#generate(AutomatonState, ExplorationLimits)}.
+ * Exploration stops before expanding the next state as soon as one of the
+ * limits is reached.
+ */
+public final class ExplorationLimits {
+
+    public static final ExplorationLimits UNLIMITED = new ExplorationLimits(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, () -> false);
+
+    private final int maxStates;
+    private final long maxEdges;
+    private final long deadline;
+    private final BooleanSupplier cancelled;
+
+    private ExplorationLimits(int maxStates, long maxEdges, long deadline, BooleanSupplier cancelled) {
+        this.maxStates = maxStates;
+        this.maxEdges = maxEdges;
+        this.deadline = deadline;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * @param maxStates
+     *            the maximal number of explored states.
+     */
+    public ExplorationLimits withMaxStates(int maxStates) {
+        return new ExplorationLimits(maxStates, maxEdges, deadline, cancelled);
+    }
+
+    /**
+     * @param maxEdges
+     *            the maximal number of edges of explored states.
+     */
+    public ExplorationLimits withMaxEdges(long maxEdges) {
+        return new ExplorationLimits(maxStates, maxEdges, deadline, cancelled);
+    }
+
+    /**
+     * @param deadline
+     *            point in time in milliseconds as returned by
+     *            {@link System#currentTimeMillis()}.
+     */
+    public ExplorationLimits withDeadline(long deadline) {
+        return new ExplorationLimits(maxStates, maxEdges, deadline, cancelled);
+    }
+
+    /**
+     * @param timeout
+     *            milliseconds from now.
+     */
+    public ExplorationLimits withTimeout(long timeout) {
+        return withDeadline(System.currentTimeMillis() + timeout);
+    }
+
+    /**
+     * @param cancelled
+     *            a cancellation token, which is polled once per explored state.
+     */
+    public ExplorationLimits withCancellation(BooleanSupplier cancelled) {
+        return new ExplorationLimits(maxStates, maxEdges, deadline, cancelled);
+    }
+
+    boolean isReached(int states, long edges) {
+        return states >= maxStates || edges >= maxEdges || (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline) || cancelled.getAsBoolean();
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import omega_automaton.acceptance.GeneralisedBuchiAcceptance;
+import omega_automaton.acceptance.GeneralisedRabinAcceptance;
+import omega_automaton.acceptance.OmegaAcceptance;
+import omega_automaton.acceptance.ProductAcceptance;
+import omega_automaton.collections.TranSet;
+import omega_automaton.collections.Tuple;
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+
+/**
+ * The synchronous product of two automata over the same
+ * {@link ValuationSetFactory}. Product states are explored on demand by the
+ * usual {@link Automaton#generate()} machinery: the row of a pair is
+ * computed symbolically from the rows of the components by intersecting each
+ * pair of labels once and dropping empty intersections.
+ * <p>
+ * The product of two generalised Büchi conditions is a generalised Büchi
+ * condition; otherwise the acceptance is the {@link ProductAcceptance} of both
+ * conditions. The acceptance sets of the right component are shifted behind
+ * the ones of the left component. Transition sets of a
+ * {@link GeneralisedRabinAcceptance} are turned into marks on the product
+ * edges, splitting labels where necessary.
+ */
+public class ProductAutomaton<L extends AutomatonState<L>, R extends AutomatonState<R>> extends Automaton<ProductAutomaton.State<L, R>, OmegaAcceptance> {
+
+    private final Automaton<L, ?> left;
+    private final Automaton<R, ?> right;
+    private final int offset;
+
+    private final List<Tuple<TranSet<L>, Integer>> leftTranSets;
+    private final List<Tuple<TranSet<R>, Integer>> rightTranSets;
+
+    private ProductAutomaton(Automaton<L, ?> left, Automaton<R, ?> right, OmegaAcceptance acceptance, int offset) {
+        super(acceptance, left.getFactory());
+        this.left = left;
+        this.right = right;
+        this.offset = offset;
+        this.leftTranSets = getTranSets(left.getAcceptance(), 0);
+        this.rightTranSets = getTranSets(right.getAcceptance(), offset);
+    }
+
+    /**
+     * Creates the product of {@param left} and {@param right}. No state is
+     * explored yet.
+     *
+     * @throws IllegalArgumentException
+     *             if the automata do not share the valuation set factory.
+     */
+    public static <L extends AutomatonState<L>, R extends AutomatonState<R>> ProductAutomaton<L, R> of(Automaton<L, ?> left, Automaton<R, ?> right) {
+        if (left.getFactory() != right.getFactory()) {
+            throw new IllegalArgumentException("Both automata have to use the same valuation set factory.");
+        }
+
+        OmegaAcceptance leftAcceptance = left.getAcceptance();
+        OmegaAcceptance rightAcceptance = right.getAcceptance();
+        int offset = getWidth(leftAcceptance);
+
+        if (leftAcceptance instanceof GeneralisedBuchiAcceptance && rightAcceptance instanceof GeneralisedBuchiAcceptance) {
+            return new ProductAutomaton<>(left, right, new GeneralisedBuchiAcceptance(offset + getWidth(rightAcceptance)), offset);
+        }
+
+        return new ProductAutomaton<>(left, right, new ProductAcceptance(leftAcceptance, rightAcceptance, offset), offset);
+    }
+
+    public Automaton<L, ?> getLeft() {
+        return left;
+    }
+
+    public Automaton<R, ?> getRight() {
+        return right;
+    }
+
+    @Nullable
+    @Override
+    protected State<L, R> generateInitialState() {
+        L leftInitialState = left.getInitialState();
+        R rightInitialState = right.getInitialState();
+
+        if (leftInitialState == null || rightInitialState == null) {
+            return null;
+        }
+
+        return new State<>(this, leftInitialState, rightInitialState);
+    }
+
+    private static int getWidth(OmegaAcceptance acceptance) {
+        int width = acceptance.getAcceptanceSets();
+
+        if (acceptance instanceof GeneralisedRabinAcceptance) {
+            for (int number : ((GeneralisedRabinAcceptance<?>) acceptance).getAcceptanceNumbers().values()) {
+                width = Math.max(width, number + 1);
+            }
+        }
+
+        return width;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> List<Tuple<TranSet<S>, Integer>> getTranSets(OmegaAcceptance acceptance, int offset) {
+        if (!(acceptance instanceof GeneralisedRabinAcceptance)) {
+            return Collections.emptyList();
+        }
+
+        List<Tuple<TranSet<S>, Integer>> tranSets = new ArrayList<>();
+        ((GeneralisedRabinAcceptance<?>) acceptance).getAcceptanceNumbers().forEach((tranSet, number) -> tranSets.add(new Tuple<>((TranSet<S>) tranSet, number + offset)));
+        return tranSets;
+    }
+
+    private BitSet combine(BitSet leftAcceptance, BitSet rightAcceptance) {
+        BitSet acceptance = (BitSet) leftAcceptance.clone();
+        rightAcceptance.stream().forEach(i -> acceptance.set(i + offset));
+        return acceptance;
+    }
+
+    /**
+     * Splits {@param label} according to the transition sets of both
+     * components and adds the pieces to {@param row}.
+     */
+    private void addEdges(State<L, R> state, State<L, R> successor, ValuationSet label, BitSet acceptance, Map<Edge<State<L, R>>, ValuationSet> row) {
+        List<Tuple<ValuationSet, BitSet>> pieces = new ArrayList<>();
+        pieces.add(new Tuple<>(label, acceptance));
+        split(state.left, leftTranSets, pieces);
+        split(state.right, rightTranSets, pieces);
+
+        for (Tuple<ValuationSet, BitSet> piece : pieces) {
+            Edge<State<L, R>> edge = Edge.of(successor, piece.right);
+            ValuationSet existing = row.get(edge);
+
+            if (existing == null) {
+                row.put(edge, piece.left);
+            } else {
+                existing.addAll(piece.left);
+                piece.left.free();
+            }
+        }
+    }
+
+    private static <S> void split(S state, List<Tuple<TranSet<S>, Integer>> tranSets, List<Tuple<ValuationSet, BitSet>> pieces) {
+        for (Tuple<TranSet<S>, Integer> tranSet : tranSets) {
+            ValuationSet valuations = tranSet.left.asMap().get(state);
+
+            if (valuations == null) {
+                continue;
+            }
+
+            for (int i = 0, size = pieces.size(); i < size; i++) {
+                Tuple<ValuationSet, BitSet> piece = pieces.get(i);
+
+                if (!valuations.intersects(piece.left)) {
+                    continue;
+                }
+
+                BitSet acceptance = (BitSet) piece.right.clone();
+                acceptance.set(tranSet.right);
+
+                if (valuations.containsAll(piece.left)) {
+                    pieces.set(i, new Tuple<>(piece.left, acceptance));
+                } else {
+                    ValuationSet outside = piece.left.copy();
+                    outside.removeAll(valuations);
+                    pieces.set(i, new Tuple<>(piece.left.intersect(valuations), acceptance));
+                    pieces.add(new Tuple<>(outside, piece.right));
+                    piece.left.free();
+                }
+            }
+        }
+    }
+
+    public static final class State<L extends AutomatonState<L>, R extends AutomatonState<R>> implements AutomatonState<State<L, R>> {
+
+        private final ProductAutomaton<L, R> product;
+        public final L left;
+        public final R right;
+        private final int hashCode;
+
+        State(ProductAutomaton<L, R> product, L left, R right) {
+            this.product = product;
+            this.left = left;
+            this.right = right;
+            this.hashCode = 31 * left.hashCode() + right.hashCode();
+        }
+
+        @Override
+        public ValuationSetFactory getFactory() {
+            return product.valuationSetFactory;
+        }
+
+        @Nonnull
+        @Override
+        public BitSet getSensitiveAlphabet() {
+            BitSet alphabet = left.getSensitiveAlphabet();
+            alphabet.or(right.getSensitiveAlphabet());
+            return alphabet;
+        }
+
+        /**
+         * Looks up the edge in the row of this state in the product, which is
+         * computed by {@link State#getSymbolicSuccessors()} and stored, if
+         * necessary. If a component is nondeterministic, this is one of the
+         * edges taken when reading {@param valuation}.
+         */
+        @Nullable
+        @Override
+        public Edge<State<L, R>> getSuccessor(BitSet valuation) {
+            return product.getSuccessor(this, valuation);
+        }
+
+        @Override
+        public Map<Edge<State<L, R>>, ValuationSet> getSymbolicSuccessors() {
+            Map<Edge<State<L, R>>, ValuationSet> row = new LinkedHashMap<>();
+            Map<Edge<R>, ValuationSet> rightRow = product.right.getSuccessors(right);
+
+            for (Map.Entry<Edge<L>, ValuationSet> leftEntry : product.left.getSuccessors(left).entrySet()) {
+                for (Map.Entry<Edge<R>, ValuationSet> rightEntry : rightRow.entrySet()) {
+                    ValuationSet label = leftEntry.getValue().intersect(rightEntry.getValue());
+
+                    if (label.isEmpty()) {
+                        label.free();
+                        continue;
+                    }
+
+                    State<L, R> successor = new State<>(product, leftEntry.getKey().successor, rightEntry.getKey().successor);
+                    product.addEdges(this, successor, label, product.combine(leftEntry.getKey().getAcceptance(), rightEntry.getKey().getAcceptance()), row);
+                }
+            }
+
+            return row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            State<?, ?> state = (State<?, ?>) o;
+            return hashCode == state.hashCode && Objects.equals(left, state.left) && Objects.equals(right, state.right);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + ", " + right + ')';
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import omega_automaton.acceptance.GeneralisedRabinAcceptance;
+import omega_automaton.acceptance.OmegaAcceptance;
+import omega_automaton.algorithms.PartitionRefinement;
+import omega_automaton.collections.valuationset.ValuationSet;
+
+/**
+ * The quotient of an automaton by the partition computed by
+ * {@link PartitionRefinement}. Each block is represented by one of its
+ * states; the rows of the representatives are the merged rows of the block and
+ * all edges lead to representatives. The acceptance condition is shared with
+ * the original automaton, which can be freed independently, since all labels
+ * are copied.
+ */
+public class QuotientAutomaton<S extends AutomatonState<S>, Acc extends OmegaAcceptance> extends Automaton<S, Acc> {
+
+    private final Map<S, S> representatives;
+
+    private QuotientAutomaton(Automaton<S, Acc> automaton) {
+        super(automaton.getAcceptance(), automaton.getFactory());
+
+        if (automaton.getAcceptance() instanceof GeneralisedRabinAcceptance) {
+            throw new IllegalArgumentException("Generalised Rabin acceptance refers to states and cannot be quotiented.");
+        }
+
+        representatives = PartitionRefinement.computeRepresentatives(automaton);
+        initialState = representatives.get(automaton.getInitialState());
+
+        for (Map.Entry<S, S> entry : representatives.entrySet()) {
+            if (entry.getKey() != entry.getValue()) {
+                continue;
+            }
+
+            Map<Edge<S>, ValuationSet> row = new LinkedHashMap<>();
+
+            automaton.getSuccessors(entry.getKey()).forEach((edge, label) -> {
+                Edge<S> quotientEdge = edge.withSuccessor(representatives.get(edge.successor));
+                ValuationSet quotientLabel = row.get(quotientEdge);
+
+                if (quotientLabel == null) {
+                    row.put(quotientEdge, owned(label::copy));
+                } else {
+                    quotientLabel.addAll(label);
+                }
+            });
+
+            putRow(entry.getKey(), row);
+        }
+    }
+
+    /**
+     * Explores {@param automaton} and merges its equivalent states.
+     *
+     * @throws IllegalArgumentException
+     *             if the acceptance condition is a
+     *             {@link GeneralisedRabinAcceptance}, whose transition sets
+     *             refer to the original states.
+     */
+    public static <S extends AutomatonState<S>, Acc extends OmegaAcceptance> QuotientAutomaton<S, Acc> of(Automaton<S, Acc> automaton) {
+        return new QuotientAutomaton<>(automaton);
+    }
+
+    /**
+     * @return the representative of the block of {@param state} or null, if
+     *         the state is not a state of the original automaton.
+     */
+    public S getRepresentative(S state) {
+        return representatives.get(state);
+    }
+
+    /**
+     * @return the map from the states of the original automaton to their
+     *         representatives.
+     */
+    public Map<S, S> getRepresentatives() {
+        return Collections.unmodifiableMap(representatives);
+    }
+}
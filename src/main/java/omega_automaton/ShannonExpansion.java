@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+
+/**
+ * Computes the outgoing edges of a state by expanding the sensitive alphabet
+ * one variable at a time. The labels are assembled bottom-up from the two
+ * cofactors of each variable, and a variable is not added to the labels if
+ * both cofactors lead to the same edges with the same labels.
+ * <p>
+ * Since {@link AutomatonState#getSuccessor(BitSet)} can only be asked for
+ * complete valuations, whether a sub-cube maps to a single edge is only known
+ * after both of its cofactors are expanded. Thus the expansion still calls
+ * {@link AutomatonState#getSuccessor(BitSet)} once for each of the 2^k
+ * valuations of the sensitive alphabet; it only saves the construction and
+ * merging of one cube per valuation. States that can do better have to
+ * implement {@link AutomatonState#getSymbolicSuccessors()}.
+ * <p>
+ * The highest variable is expanded first, so the leaves are visited in the
+ * order of {@link omega_automaton.collections.Collections3#powerSet(BitSet)}
+ * and the edges appear in the same order in the resulting map.
+ */
+final class ShannonExpansion<S> {
+
+    private final AutomatonState<S> state;
+    private final ValuationSetFactory factory;
+    private final int[] variables;
+    private final ValuationSet[] positiveLiterals;
+    private final ValuationSet[] negativeLiterals;
+    private final BitSet valuation;
+
+    private ShannonExpansion(AutomatonState<S> state, BitSet sensitiveAlphabet) {
+        this.state = state;
+        this.factory = state.getFactory();
+        this.variables = sensitiveAlphabet.stream().toArray();
+        this.positiveLiterals = new ValuationSet[variables.length];
+        this.negativeLiterals = new ValuationSet[variables.length];
+        this.valuation = new BitSet();
+    }
+
+    static <S> Map<Edge<S>, ValuationSet> getSuccessors(AutomatonState<S> state) {
+        ShannonExpansion<S> expansion = new ShannonExpansion<>(state, state.getSensitiveAlphabet());
+        Map<Edge<S>, ValuationSet> successors = expansion.expand(expansion.variables.length - 1);
+        expansion.free();
+        return successors;
+    }
+
+    private Map<Edge<S>, ValuationSet> expand(int index) {
+        if (index < 0) {
+            Edge<S> successor = state.getSuccessor((BitSet) valuation.clone());
+
+            if (successor == null) {
+                return Collections.emptyMap();
+            }
+
+            Map<Edge<S>, ValuationSet> leaf = new LinkedHashMap<>(2);
+            leaf.put(successor, factory.createUniverseValuationSet());
+            return leaf;
+        }
+
+        int variable = variables[index];
+
+        Map<Edge<S>, ValuationSet> low = expand(index - 1);
+        valuation.set(variable);
+        Map<Edge<S>, ValuationSet> high = expand(index - 1);
+        valuation.clear(variable);
+
+        // The variable is irrelevant for this sub-cube.
+        if (low.equals(high)) {
+            high.values().forEach(ValuationSet::free);
+            return low;
+        }
+
+        Map<Edge<S>, ValuationSet> successors = low.isEmpty() ? new LinkedHashMap<>() : low;
+        ValuationSet negativeLiteral = getLiteral(index, false);
+
+        successors.values().forEach(label -> label.retainAll(negativeLiteral));
+
+        if (!high.isEmpty()) {
+            ValuationSet positiveLiteral = getLiteral(index, true);
+
+            high.forEach((edge, label) -> {
+                label.retainAll(positiveLiteral);
+                ValuationSet oldLabel = successors.get(edge);
+
+                if (oldLabel == null) {
+                    successors.put(edge, label);
+                } else {
+                    oldLabel.addAllWith(label);
+                }
+            });
+        }
+
+        return successors;
+    }
+
+    private ValuationSet getLiteral(int index, boolean positive) {
+        ValuationSet[] literals = positive ? positiveLiterals : negativeLiterals;
+
+        if (literals[index] == null) {
+            BitSet variable = new BitSet();
+            variable.set(variables[index]);
+            literals[index] = factory.createValuationSet(positive ? variable : new BitSet(), variable);
+        }
+
+        return literals[index];
+    }
+
+    private void free() {
+        for (int i = 0; i < variables.length; i++) {
+            if (positiveLiterals[i] != null) {
+                positiveLiterals[i].free();
+            }
+
+            if (negativeLiterals[i] != null) {
+                negativeLiterals[i].free();
+            }
+        }
+    }
+}
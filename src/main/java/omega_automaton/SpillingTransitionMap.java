@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSetScope;
+
+/**
+ * A transition table for {@link Automaton} that keeps only the most recently
+ * used rows in memory. Rows evicted from memory are encoded with a
+ * {@link StateCodec} and {@link ValuationSetFactory#write(ValuationSet,
+ * java.io.DataOutput)} and written to a memory-mapped file; only the position
+ * of the record is kept on the heap. Reading a spilled row decodes it and
+ * makes it hot again. A reloaded row keeps its record: when it is evicted
+ * again, it is only written if its encoding changed, in place if the new
+ * record fits, and appended otherwise.
+ * <p>
+ * The map owns the labels of its rows. The labels of rows discarded by
+ * {@link SpillingTransitionMap#clear()} or by removing keys from
+ * {@link SpillingTransitionMap#keySet()} are freed. The labels of an evicted
+ * row are released by {@link ValuationSetScope#freeLater(ValuationSet)}: a
+ * row returned by {@link SpillingTransitionMap#get(Object)} stays valid until
+ * the innermost {@link ValuationSetScope} of the caller is closed, even if
+ * later calls evict it. Rows are always computed inside such a scope by
+ * {@link Automaton}, so a row computation can hold several rows at once.
+ * Without an open scope, a row is only valid until it is evicted. Changes
+ * made to an evicted row are lost. Rows
+ * passed to {@link SpillingTransitionMap#put(Object, Map)} are owned by the
+ * map, rows returned by {@link SpillingTransitionMap#put(Object, Map)} and
+ * {@link SpillingTransitionMap#remove(Object)} are owned by the caller. This
+ * map is not thread-safe.
+ */
+public class SpillingTransitionMap<S> extends AbstractMap<S, Map<Edge<S>, ValuationSet>> implements Closeable {
+
+    private static final int SEGMENT_SIZE = 1 << 26;
+
+    private final StateCodec<S> codec;
+    private final ValuationSetFactory factory;
+    private final Map<S, Map<Edge<S>, ValuationSet>> hot;
+    // Positions of the records of rows only stored on disk.
+    private final Map<S, Long> spilled;
+    // Positions of the records of hot rows that were spilled before.
+    private final Map<S, Long> reloaded;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final List<MappedByteBuffer> segments;
+    private long position;
+
+    /**
+     * @param hotRows
+     *            the number of rows kept in memory.
+     * @param directory
+     *            the directory for the spill file or null, for the default
+     *            temporary-file directory.
+     */
+    public SpillingTransitionMap(StateCodec<S> codec, ValuationSetFactory factory, int hotRows, @Nullable File directory) throws IOException {
+        this.codec = codec;
+        this.factory = factory;
+        this.spilled = new HashMap<>();
+        this.reloaded = new HashMap<>();
+        this.segments = new ArrayList<>();
+        this.hot = new LinkedHashMap<S, Map<Edge<S>, ValuationSet>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<S, Map<Edge<S>, ValuationSet>> eldest) {
+                if (size() <= hotRows) {
+                    return false;
+                }
+
+                spill(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+
+        file = File.createTempFile("transitions", ".spill", directory);
+        file.deleteOnExit();
+        randomAccessFile = new RandomAccessFile(file, "rw");
+    }
+
+    @Override
+    public Map<Edge<S>, ValuationSet> get(Object key) {
+        Map<Edge<S>, ValuationSet> row = hot.get(key);
+
+        if (row != null) {
+            return row;
+        }
+
+        Long offset = spilled.remove(key);
+
+        if (offset == null) {
+            return null;
+        }
+
+        // The key is equal to the stored state.
+        @SuppressWarnings("unchecked")
+        S state = (S) key;
+        // The labels belong to the map, not to a scope open in the caller.
+        row = ValuationSetScope.detached(() -> load(offset));
+        reloaded.put(state, offset);
+        hot.put(state, row);
+        return row;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return hot.containsKey(key) || spilled.containsKey(key);
+    }
+
+    /**
+     * Stores {@param row} as the row of {@param key}.
+     *
+     * @return the previous row, if it was in memory, and null otherwise. A
+     *         spilled previous row is dropped without reading it.
+     */
+    @Override
+    public Map<Edge<S>, ValuationSet> put(S key, Map<Edge<S>, ValuationSet> row) {
+        // The record is kept, such that the new row can overwrite it.
+        Long offset = spilled.remove(key);
+
+        if (offset != null) {
+            reloaded.put(key, offset);
+        }
+
+        return hot.put(key, row);
+    }
+
+    @Override
+    public Map<Edge<S>, ValuationSet> remove(Object key) {
+        reloaded.remove(key);
+        Map<Edge<S>, ValuationSet> row = hot.remove(key);
+
+        if (row != null) {
+            return row;
+        }
+
+        Long offset = spilled.remove(key);
+        return offset == null ? null : load(offset);
+    }
+
+    private boolean discard(Object key) {
+        reloaded.remove(key);
+        Map<Edge<S>, ValuationSet> row = hot.remove(key);
+
+        if (row != null) {
+            freeLabels(row);
+            return true;
+        }
+
+        return spilled.remove(key) != null;
+    }
+
+    private static <S> void freeLabels(Map<Edge<S>, ValuationSet> row) {
+        row.values().forEach(ValuationSet::free);
+    }
+
+    /**
+     * @return the number of bytes of the spill file in use.
+     */
+    long getSpilledBytes() {
+        return position;
+    }
+
+    @Override
+    public int size() {
+        return hot.size() + spilled.size();
+    }
+
+    @Override
+    public void clear() {
+        hot.values().forEach(SpillingTransitionMap::freeLabels);
+        hot.clear();
+        spilled.clear();
+        reloaded.clear();
+        position = 0;
+    }
+
+    @Override
+    public Set<S> keySet() {
+        return new AbstractSet<S>() {
+            @Override
+            public Iterator<S> iterator() {
+                return new KeyIterator();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return discard(o);
+            }
+
+            @Override
+            public int size() {
+                return SpillingTransitionMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<S, Map<Edge<S>, ValuationSet>>> entrySet() {
+        return new AbstractSet<Map.Entry<S, Map<Edge<S>, ValuationSet>>>() {
+            @Override
+            public Iterator<Map.Entry<S, Map<Edge<S>, ValuationSet>>> iterator() {
+                KeyIterator keys = new KeyIterator();
+
+                return new Iterator<Map.Entry<S, Map<Edge<S>, ValuationSet>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<S, Map<Edge<S>, ValuationSet>> next() {
+                        S key = keys.next();
+                        return new SimpleEntry<S, Map<Edge<S>, ValuationSet>>(key, get(key)) {
+                            private static final long serialVersionUID = 1L;
+
+                            @Override
+                            public Map<Edge<S>, ValuationSet> setValue(Map<Edge<S>, ValuationSet> value) {
+                                put(key, value);
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        keys.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return SpillingTransitionMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over a snapshot of the keys, such that loading rows while
+     * iterating is safe.
+     */
+    private final class KeyIterator implements Iterator<S> {
+
+        private final Iterator<S> keys;
+        @Nullable
+        private S current;
+
+        KeyIterator() {
+            List<S> snapshot = new ArrayList<>(size());
+            snapshot.addAll(hot.keySet());
+            snapshot.addAll(spilled.keySet());
+            keys = snapshot.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return keys.hasNext();
+        }
+
+        @Override
+        public S next() {
+            current = keys.next();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            discard(current);
+            current = null;
+        }
+    }
+
+    private void spill(S state, Map<Edge<S>, ValuationSet> row) {
+        byte[] record = encode(state, row);
+        Long offset = reloaded.remove(state);
+
+        try {
+            if (offset != null) {
+                ByteBuffer buffer = getSegment(offset);
+                int length = buffer.getInt();
+
+                if (record.length <= length) {
+                    ByteBuffer stored = buffer.slice();
+                    stored.limit(length);
+
+                    // Unchanged rows are not written again.
+                    if (!stored.equals(ByteBuffer.wrap(record))) {
+                        buffer = getSegment(offset);
+                        buffer.putInt(record.length);
+                        buffer.put(record);
+                    }
+
+                    spilled.put(state, offset);
+                    row.values().forEach(ValuationSetScope::freeLater);
+                    return;
+                }
+            }
+
+            // Records do not cross segment boundaries.
+            if (position % SEGMENT_SIZE + Integer.BYTES + record.length > SEGMENT_SIZE) {
+                position = (position / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+            }
+
+            ByteBuffer buffer = getSegment(position);
+            buffer.putInt(record.length);
+            buffer.put(record);
+            spilled.put(state, position);
+            position += Integer.BYTES + record.length;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        row.values().forEach(ValuationSetScope::freeLater);
+    }
+
+    private byte[] encode(S state, Map<Edge<S>, ValuationSet> row) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+
+            output.writeInt(row.size());
+
+            for (Map.Entry<Edge<S>, ValuationSet> entry : row.entrySet()) {
+                codec.write(entry.getKey().successor, output);
+                long[] acceptance = entry.getKey().getAcceptance().toLongArray();
+                output.writeInt(acceptance.length);
+
+                for (long word : acceptance) {
+                    output.writeLong(word);
+                }
+
+                factory.write(entry.getValue(), output);
+            }
+
+            output.flush();
+            byte[] record = bytes.toByteArray();
+
+            if (record.length + Integer.BYTES > SEGMENT_SIZE) {
+                throw new IllegalStateException("Row of " + state + " exceeds the segment size.");
+            }
+
+            return record;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Map<Edge<S>, ValuationSet> load(long offset) {
+        try {
+            ByteBuffer buffer = getSegment(offset);
+            byte[] record = new byte[buffer.getInt()];
+            buffer.get(record);
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+            int size = input.readInt();
+            Map<Edge<S>, ValuationSet> row = new LinkedHashMap<>(size);
+
+            for (int i = 0; i < size; i++) {
+                S successor = codec.read(input);
+                long[] acceptance = new long[input.readInt()];
+
+                for (int j = 0; j < acceptance.length; j++) {
+                    acceptance[j] = input.readLong();
+                }
+
+                row.put(Edge.of(successor, BitSet.valueOf(acceptance)), factory.read(input));
+            }
+
+            return row;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return a buffer positioned at {@param offset}.
+     */
+    private ByteBuffer getSegment(long offset) throws IOException {
+        int index = (int) (offset / SEGMENT_SIZE);
+
+        while (segments.size() <= index) {
+            segments.add(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+        }
+
+        ByteBuffer buffer = segments.get(index).duplicate();
+        buffer.position((int) (offset % SEGMENT_SIZE));
+        return buffer;
+    }
+
+    /**
+     * Frees the labels of the rows in memory, unmaps the spill file and
+     * deletes it.
+     */
+    @Override
+    public void close() throws IOException {
+        clear();
+        segments.forEach(SpillingTransitionMap::unmap);
+        segments.clear();
+        randomAccessFile.close();
+
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Unmaps {@param buffer} without waiting for the garbage collector. This
+     * needs JDK internals; if they are not accessible, the mapping is left to
+     * the garbage collector. The buffer must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later.
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafe = unsafeClass.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe.get(null), buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // Fall through to Java 8.
+        }
+
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // Left to the garbage collector.
+        }
+    }
+}
@@ -26,9 +26,9 @@ import jhoafparser.consumer.HOAConsumer;
 import jhoafparser.consumer.HOAConsumerException;
 import omega_automaton.acceptance.BuchiAcceptance;
 import omega_automaton.collections.Collections3;
-import omega_automaton.collections.valuationset.BDDValuationSetFactory;
 import omega_automaton.collections.valuationset.ValuationSet;
 import omega_automaton.collections.valuationset.ValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSetFactoryRegistry;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -36,24 +36,19 @@ import java.util.*;
 
 public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State, BuchiAcceptance> {
 
-    private static final BitSet ACC;
-    private static final BitSet REJ;
+    @Nullable
+    private ValuationSetFactoryRegistry registry;
 
-    static {
-        ACC = new BitSet();
-        ACC.set(0);
-        REJ = new BitSet();
-    }
-
-    StoredBuchiAutomaton(ValuationSetFactory factory) {
+    StoredBuchiAutomaton(ValuationSetFactory factory, @Nullable ValuationSetFactoryRegistry registry) {
         super(new BuchiAcceptance(), factory);
+        this.registry = registry;
     }
 
     private State addState() {
         State state = new State();
 
         // Add to transition table
-        transitions.put(state, new HashMap<>());
+        putRow(state, new HashMap<>());
 
         return state;
     }
@@ -61,19 +56,34 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
     private void addTransition(State source, boolean accepting, ValuationSet label, State successor) {
         Map<Edge<State>, ValuationSet> transition = transitions.get(source);
 
-        Edge<State> edge = new Edge<>(successor, accepting ? ACC : REJ);
+        Edge<State> edge = Edge.of(successor, accepting ? 1L : 0L);
 
         ValuationSet oldLabel = transition.get(edge);
 
         if (oldLabel == null) {
             transition.put(edge, label);
+            addEdge(source, successor);
         } else {
-            oldLabel.addAll(label);
+            oldLabel.addAllWith(label);
+        }
+    }
+
+    /**
+     * Frees the labels and gives the factory back to the registry it was
+     * obtained from.
+     */
+    @Override
+    public void free() {
+        super.free();
+
+        if (registry != null) {
+            registry.release(valuationSetFactory);
+            registry = null;
         }
     }
 
     public boolean isAccepting(State state) {
-        return Collections3.getElement(transitions.get(state).keySet()).acceptance.get(0);
+        return Collections3.getElement(transitions.get(state).keySet()).inSet(0);
     }
 
     public static class State implements AutomatonState<State> {
@@ -103,8 +113,14 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
         }
     }
 
+    /**
+     * Builds the automata of a HOA stream. Automata with the same atomic
+     * propositions share the valuation set factory obtained from the
+     * registry of the builder.
+     */
     public static class Builder implements HOAConsumer {
 
+        private final ValuationSetFactoryRegistry registry;
         private final Deque<StoredBuchiAutomaton> automata = new ArrayDeque<>();
         private StoredBuchiAutomaton automaton;
         private ValuationSetFactory valuationSetFactory;
@@ -113,6 +129,18 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
         private int implicitEdgeCounter;
         private BitSet acceptingStates;
 
+        /**
+         * Creates a builder whose automata only share factories with each
+         * other.
+         */
+        public Builder() {
+            this(new ValuationSetFactoryRegistry());
+        }
+
+        public Builder(ValuationSetFactoryRegistry registry) {
+            this.registry = registry;
+        }
+
         @Override
         public boolean parserResolvesAliases() {
             return false;
@@ -120,10 +148,9 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
 
         @Override
         public void notifyHeaderStart(String s) {
-            valuationSetFactory = null;
+            discard();
             integerToState = null;
             initialState = null;
-            automaton = null;
             acceptingStates = null;
         }
 
@@ -150,7 +177,8 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
         public void setAPs(List<String> list) throws HOAConsumerException {
             BiMap<String, Integer> aliases = HashBiMap.create(list.size());
             list.forEach(ap -> aliases.put(ap, aliases.size()));
-            valuationSetFactory = new BDDValuationSetFactory(list.size());
+            discard();
+            valuationSetFactory = registry.acquire(list);
         }
 
         @Override
@@ -192,10 +220,10 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
         @Override
         public void notifyBodyStart() throws HOAConsumerException {
             if (valuationSetFactory == null) {
-                valuationSetFactory = new BDDValuationSetFactory(0);
+                valuationSetFactory = registry.acquire(Collections.emptyList());
             }
 
-            automaton = new StoredBuchiAutomaton(valuationSetFactory);
+            automaton = new StoredBuchiAutomaton(valuationSetFactory, registry);
             ensureSpaceInMap(initialState);
             integerToState[initialState] = automaton.initialState = automaton.addState();
             acceptingStates = new BitSet();
@@ -266,7 +294,7 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
                 integerToState[index] = successor = automaton.addState();
             }
 
-            automaton.addTransition(source, acceptingStates.get(i), toValuationSet(booleanExpression), successor);
+            automaton.addTransition(source, acceptingStates.get(i), automaton.owned(() -> toValuationSet(booleanExpression)), successor);
         }
 
         @Override
@@ -276,7 +304,10 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
 
         @Override
         public void notifyEnd() throws HOAConsumerException {
+            // The reference to the factory is handed to the automaton.
             automata.add(automaton);
+            automaton = null;
+            valuationSetFactory = null;
             notifyHeaderStart(null);
         }
 
@@ -285,6 +316,21 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
             notifyHeaderStart(null);
         }
 
+        /**
+         * Discards the automaton under construction, e.g. after an abort or a
+         * parser error, and gives its factory back to the registry.
+         */
+        private void discard() {
+            if (automaton != null) {
+                automaton.free();
+            } else if (valuationSetFactory != null) {
+                registry.release(valuationSetFactory);
+            }
+
+            automaton = null;
+            valuationSetFactory = null;
+        }
+
         @Override
         public void notifyWarning(String s) throws HOAConsumerException {
             // No operation
@@ -320,18 +366,23 @@ public class StoredBuchiAutomaton extends Automaton<StoredBuchiAutomaton.State,
             }
 
             if (label.isNOT()) {
-                return toValuationSet(label.getLeft()).complement();
+                ValuationSet valuationSet = toValuationSet(label.getLeft());
+                ValuationSet complement = valuationSet.complement();
+                valuationSet.free();
+                return complement;
             }
 
             if (label.isAND()) {
                 ValuationSet valuationSet = toValuationSet(label.getLeft());
-                valuationSet.retainAll(toValuationSet(label.getRight()));
+                ValuationSet right = toValuationSet(label.getRight());
+                valuationSet.retainAll(right);
+                right.free();
                 return valuationSet;
             }
 
             if (label.isOR()) {
                 ValuationSet valuationSet = toValuationSet(label.getLeft());
-                valuationSet.addAll(toValuationSet(label.getRight()));
+                valuationSet.addAllWith(toValuationSet(label.getRight()));
                 return valuationSet;
             }
 
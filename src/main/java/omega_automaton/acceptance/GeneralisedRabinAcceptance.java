@@ -123,6 +123,16 @@ public class GeneralisedRabinAcceptance<S extends AutomatonState<?>> implements
         return conjunction;
     }
 
+    /**
+     * Returns the numbers of the acceptance sets as used in
+     * {@link GeneralisedRabinAcceptance#getBooleanExpression()}.
+     */
+    public Map<TranSet<S>, Integer> getAcceptanceNumbers() {
+        // Numbers are assigned while building the expression.
+        getBooleanExpression();
+        return Collections.unmodifiableMap(acceptanceNumbers);
+    }
+
     public Set<ValuationSet> getMaximallyMergedEdgesOfEdge(AutomatonState<?> currentState, ValuationSet initialValuation) {
         Set<ValuationSet> result = new HashSet<>();
         result.add(initialValuation);
@@ -143,7 +153,9 @@ public class GeneralisedRabinAcceptance<S extends AutomatonState<?>> implements
             if (interestingValuationSet != null && interestingValuationSet.intersects(edge) && !interestingValuationSet.containsAll(edge)) {
                 toRemove.add(edge);
                 toAdd.add(edge.intersect(interestingValuationSet));
-                toAdd.add(edge.intersect(interestingValuationSet.complement()));
+                ValuationSet outside = edge.copy();
+                outside.removeAll(interestingValuationSet);
+                toAdd.add(outside);
             }
         }
 
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.acceptance;
+
+import jhoafparser.ast.AtomAcceptance;
+import jhoafparser.ast.BooleanExpression;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Conjunction of two acceptance conditions, where the acceptance sets of the
+ * right condition are shifted by the number of sets of the left one. The
+ * condition has no HOA name and is only given by its expression.
+ */
+public class ProductAcceptance implements OmegaAcceptance {
+
+    private final OmegaAcceptance left;
+    private final OmegaAcceptance right;
+    private final int offset;
+
+    /**
+     * @param offset
+     *            the number of acceptance sets reserved for {@param left}.
+     */
+    public ProductAcceptance(OmegaAcceptance left, OmegaAcceptance right, int offset) {
+        this.left = left;
+        this.right = right;
+        this.offset = offset;
+    }
+
+    @Override
+    public String getName() {
+        return null;
+    }
+
+    @Override
+    public List<Object> getNameExtra() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int getAcceptanceSets() {
+        return offset + right.getAcceptanceSets();
+    }
+
+    @Override
+    public BooleanExpression<AtomAcceptance> getBooleanExpression() {
+        return left.getBooleanExpression().and(shift(right.getBooleanExpression(), offset));
+    }
+
+    public OmegaAcceptance getLeft() {
+        return left;
+    }
+
+    public OmegaAcceptance getRight() {
+        return right;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    private static BooleanExpression<AtomAcceptance> shift(BooleanExpression<AtomAcceptance> expression, int offset) {
+        if (expression.isTRUE() || expression.isFALSE()) {
+            return expression;
+        }
+
+        if (expression.isAtom()) {
+            AtomAcceptance atom = expression.getAtom();
+            return new BooleanExpression<>(new AtomAcceptance(atom.getType(), atom.getAcceptanceSet() + offset, atom.isNegated()));
+        }
+
+        if (expression.isNOT()) {
+            return shift(expression.getLeft(), offset).not();
+        }
+
+        BooleanExpression<AtomAcceptance> left = shift(expression.getLeft(), offset);
+        BooleanExpression<AtomAcceptance> right = shift(expression.getRight(), offset);
+        return expression.isAND() ? left.and(right) : left.or(right);
+    }
+}
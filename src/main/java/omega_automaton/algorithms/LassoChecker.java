@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.algorithms;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import jhoafparser.ast.AtomAcceptance;
+import jhoafparser.ast.BooleanExpression;
+import omega_automaton.Automaton;
+import omega_automaton.AutomatonState;
+import omega_automaton.CompactAutomaton;
+import omega_automaton.acceptance.GeneralisedRabinAcceptance;
+import omega_automaton.acceptance.OmegaAcceptance;
+import omega_automaton.collections.TranSet;
+import omega_automaton.collections.Tuple;
+import omega_automaton.collections.valuationset.DecisionDiagram;
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+
+/**
+ * Decides acceptance of ultimately periodic words u·v^ω. The automaton is
+ * explored and compacted once. All labels (and the transition sets of a
+ * {@link GeneralisedRabinAcceptance}) are compiled into small decision
+ * diagrams, thus checking words does not touch the {@link ValuationSetFactory}
+ * and words can be checked in parallel.
+ * <p>
+ * The prefix u is read by a subset simulation on {@link BitSet}s. Then the
+ * product of the automaton with the positions of v is explored, and a word is
+ * accepted if for some clause of the disjunctive normal form of the acceptance
+ * condition, some SCC avoiding all Fin-edges of the clause visits all
+ * Inf-sets of the clause.
+ */
+public class LassoChecker<S extends AutomatonState<S>> {
+
+    private final CompactAutomaton<S, ?> automaton;
+    private final List<Tuple<BitSet, BitSet>> clauses;
+    private final DecisionDiagram diagram;
+
+    // Root of the decision diagram of each label of the automaton.
+    private final int[] labels;
+    // Acceptance sets given by transition sets: numbers and diagram roots per state.
+    private final int[][] stateSetNumbers;
+    private final int[][] stateSetLabels;
+
+    public LassoChecker(Automaton<S, ?> automaton) {
+        this.automaton = CompactAutomaton.of(automaton);
+
+        OmegaAcceptance acceptance = automaton.getAcceptance();
+        this.clauses = acceptance == null ? Collections.singletonList(new Tuple<>(new BitSet(), new BitSet())) : toDNF(acceptance.getBooleanExpression(), false);
+        this.diagram = new DecisionDiagram(automaton.getFactory());
+
+        labels = new int[this.automaton.getLabelCount()];
+
+        for (int label = 0; label < labels.length; label++) {
+            labels[label] = diagram.compile(Collections.singletonList(this.automaton.getLabel(label)));
+        }
+
+        stateSetNumbers = new int[this.automaton.size()][];
+        stateSetLabels = new int[this.automaton.size()][];
+
+        if (acceptance instanceof GeneralisedRabinAcceptance) {
+            compileTransitionSets((GeneralisedRabinAcceptance<?>) acceptance);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compileTransitionSets(GeneralisedRabinAcceptance<?> acceptance) {
+        List<List<Integer>> numbers = new ArrayList<>();
+        List<List<Integer>> roots = new ArrayList<>();
+
+        for (int i = 0; i < automaton.size(); i++) {
+            numbers.add(new ArrayList<>());
+            roots.add(new ArrayList<>());
+        }
+
+        for (Map.Entry<? extends TranSet<?>, Integer> set : acceptance.getAcceptanceNumbers().entrySet()) {
+            for (Map.Entry<?, ValuationSet> entry : set.getKey().asMap().entrySet()) {
+                int state = automaton.getId((S) entry.getKey());
+
+                if (state != -1) {
+                    numbers.get(state).add(set.getValue());
+                    roots.get(state).add(diagram.compile(Collections.singletonList(entry.getValue())));
+                }
+            }
+        }
+
+        for (int i = 0; i < automaton.size(); i++) {
+            stateSetNumbers[i] = numbers.get(i).stream().mapToInt(Integer::intValue).toArray();
+            stateSetLabels[i] = roots.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Frees the labels copied from the automaton. The states are not freed, as
+     * they are shared with the automaton. The checker must not be used
+     * afterwards.
+     */
+    public void free() {
+        automaton.freeLabels();
+    }
+
+    private boolean evaluate(int root, BitSet valuation) {
+        return diagram.evaluate(root, valuation) != DecisionDiagram.NONE;
+    }
+
+    private boolean evaluateEdge(int edge, BitSet valuation) {
+        return evaluate(labels[automaton.getLabelId(edge)], valuation);
+    }
+
+    /**
+     * Converts the acceptance condition into a list of clauses (Fin-sets,
+     * Inf-sets).
+     */
+    private static List<Tuple<BitSet, BitSet>> toDNF(BooleanExpression<AtomAcceptance> expression, boolean negated) {
+        if (expression.isTRUE() || expression.isFALSE()) {
+            return expression.isTRUE() != negated ? Collections.singletonList(new Tuple<>(new BitSet(), new BitSet())) : Collections.emptyList();
+        }
+
+        if (expression.isNOT()) {
+            return toDNF(expression.getLeft(), !negated);
+        }
+
+        if (expression.isAtom()) {
+            AtomAcceptance atom = expression.getAtom();
+            boolean fin = (atom.getType() == AtomAcceptance.Type.TEMPORAL_FIN) != negated;
+
+            if (atom.isNegated()) {
+                throw new IllegalArgumentException("Negated acceptance sets are not supported: " + atom);
+            }
+
+            Tuple<BitSet, BitSet> clause = new Tuple<>(new BitSet(), new BitSet());
+            (fin ? clause.left : clause.right).set(atom.getAcceptanceSet());
+            return Collections.singletonList(clause);
+        }
+
+        List<Tuple<BitSet, BitSet>> left = toDNF(expression.getLeft(), negated);
+        List<Tuple<BitSet, BitSet>> right = toDNF(expression.getRight(), negated);
+
+        // De Morgan: a negated conjunction is a disjunction and vice versa.
+        if (expression.isOR() != negated) {
+            List<Tuple<BitSet, BitSet>> result = new ArrayList<>(left);
+            result.addAll(right);
+            return result;
+        }
+
+        List<Tuple<BitSet, BitSet>> result = new ArrayList<>();
+
+        for (Tuple<BitSet, BitSet> clause1 : left) {
+            for (Tuple<BitSet, BitSet> clause2 : right) {
+                Tuple<BitSet, BitSet> clause = new Tuple<>((BitSet) clause1.left.clone(), (BitSet) clause1.right.clone());
+                clause.left.or(clause2.left);
+                clause.right.or(clause2.right);
+                result.add(clause);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return true, if some run on {@param word} from the initial state is
+     *         accepting, and false if there is none or the automaton has no
+     *         initial state.
+     */
+    public boolean accepts(Lasso word) {
+        int initialState = automaton.getInitialStateId();
+
+        if (initialState == -1 || clauses.isEmpty()) {
+            return false;
+        }
+
+        BitSet current = new BitSet();
+        current.set(initialState);
+
+        for (BitSet letter : word.prefix) {
+            BitSet next = new BitSet();
+
+            for (int state = current.nextSetBit(0); state >= 0; state = current.nextSetBit(state + 1)) {
+                for (int edge = automaton.getRowStart(state); edge < automaton.getRowEnd(state); edge++) {
+                    if (evaluateEdge(edge, letter)) {
+                        next.set(automaton.getSuccessorId(edge));
+                    }
+                }
+            }
+
+            if (next.isEmpty()) {
+                return false;
+            }
+
+            current = next;
+        }
+
+        ProductGraph graph = new ProductGraph(word.loop, current);
+        return clauses.stream().anyMatch(graph::hasAcceptingSCC);
+    }
+
+    public boolean[] accepts(List<Lasso> words) {
+        boolean[] verdicts = new boolean[words.size()];
+
+        for (int i = 0; i < verdicts.length; i++) {
+            verdicts[i] = accepts(words.get(i));
+        }
+
+        return verdicts;
+    }
+
+    /**
+     * Checks {@param words} in parallel on the common fork-join pool.
+     */
+    public boolean[] acceptsParallel(List<Lasso> words) {
+        boolean[] verdicts = new boolean[words.size()];
+        IntStream.range(0, verdicts.length).parallel().forEach(i -> verdicts[i] = accepts(words.get(i)));
+        return verdicts;
+    }
+
+    /**
+     * The product of the automaton with the positions of the loop, explored
+     * from the states reached after the prefix. Node (q, i) means being in
+     * state q before reading the i-th letter of the loop.
+     */
+    private final class ProductGraph {
+
+        private final int[] offsets;
+        private final int[] targets;
+        private final BitSet[] marks;
+        private final int size;
+
+        ProductGraph(List<BitSet> loop, BitSet initialStates) {
+            Map<Long, Integer> ids = new HashMap<>();
+            List<long[]> queue = new ArrayList<>();
+
+            initialStates.stream().forEach(state -> {
+                ids.put(encode(state, 0), queue.size());
+                queue.add(new long[] { state, 0 });
+            });
+
+            List<Integer> edgeTargets = new ArrayList<>();
+            List<BitSet> edgeMarks = new ArrayList<>();
+            List<Integer> rowOffsets = new ArrayList<>();
+
+            for (int i = 0; i < queue.size(); i++) {
+                int state = (int) queue.get(i)[0];
+                int position = (int) queue.get(i)[1];
+                int nextPosition = (position + 1) % loop.size();
+                BitSet letter = loop.get(position);
+                BitSet stateMarks = getStateMarks(state, letter);
+
+                rowOffsets.add(edgeTargets.size());
+
+                for (int edge = automaton.getRowStart(state); edge < automaton.getRowEnd(state); edge++) {
+                    if (!evaluateEdge(edge, letter)) {
+                        continue;
+                    }
+
+                    int successor = automaton.getSuccessorId(edge);
+                    Integer target = ids.get(encode(successor, nextPosition));
+
+                    if (target == null) {
+                        target = queue.size();
+                        ids.put(encode(successor, nextPosition), target);
+                        queue.add(new long[] { successor, nextPosition });
+                    }
+
+                    BitSet mark = automaton.getEdgeAcceptance(edge);
+                    mark.or(stateMarks);
+                    edgeTargets.add(target);
+                    edgeMarks.add(mark);
+                }
+            }
+
+            rowOffsets.add(edgeTargets.size());
+
+            size = queue.size();
+            offsets = rowOffsets.stream().mapToInt(Integer::intValue).toArray();
+            targets = edgeTargets.stream().mapToInt(Integer::intValue).toArray();
+            marks = edgeMarks.toArray(new BitSet[edgeMarks.size()]);
+        }
+
+        private long encode(int state, int position) {
+            return ((long) state << 32) | position;
+        }
+
+        private BitSet getStateMarks(int state, BitSet letter) {
+            BitSet result = new BitSet();
+            int[] numbers = stateSetNumbers[state];
+
+            if (numbers != null) {
+                for (int i = 0; i < numbers.length; i++) {
+                    if (evaluate(stateSetLabels[state][i], letter)) {
+                        result.set(numbers[i]);
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Runs {@link SCCAnalyser.IdSearch} on the graph without the edges
+         * carrying a Fin-set of the clause. For every SCC the marks of its
+         * internal edges are collected and compared against the Inf-sets of
+         * the clause.
+         */
+        boolean hasAcceptingSCC(Tuple<BitSet, BitSet> clause) {
+            SCCAnalyser.IdSearch search = new SCCAnalyser.IdSearch(new SCCAnalyser.IdGraph() {
+                @Override
+                public int getRowStart(int node) {
+                    return offsets[node];
+                }
+
+                @Override
+                public int getRowEnd(int node) {
+                    return offsets[node + 1];
+                }
+
+                @Override
+                public int getSuccessorId(int edge) {
+                    return targets[edge];
+                }
+
+                @Override
+                public boolean isAllowed(int node, int edge) {
+                    return !marks[edge].intersects(clause.left);
+                }
+            });
+
+            for (int root = 0; root < size; root++) {
+                if (!search.isVisited(root) && search.search(root, (members, from, to, component) -> isAccepting(members, from, to, component, search, clause))) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean isAccepting(int[] members, int from, int to, int scc, SCCAnalyser.IdSearch search, Tuple<BitSet, BitSet> clause) {
+            BitSet visited = new BitSet();
+            boolean cycle = false;
+
+            for (int i = from; i < to; i++) {
+                int node = members[i];
+
+                for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    if (search.getComponent(targets[edge]) == scc && !marks[edge].intersects(clause.left)) {
+                        cycle = true;
+                        visited.or(marks[edge]);
+                    }
+                }
+            }
+
+            BitSet missing = (BitSet) clause.right.clone();
+            missing.andNot(visited);
+            return cycle && missing.isEmpty();
+        }
+    }
+
+    /**
+     * An ultimately periodic word prefix·loop^ω.
+     */
+    public static final class Lasso {
+
+        public final List<BitSet> prefix;
+        public final List<BitSet> loop;
+
+        public Lasso(List<BitSet> prefix, List<BitSet> loop) {
+            if (loop.isEmpty()) {
+                throw new IllegalArgumentException("The loop of a lasso must not be empty.");
+            }
+
+            this.prefix = prefix;
+            this.loop = loop;
+        }
+
+        @Override
+        public String toString() {
+            return prefix + " " + loop + "^w";
+        }
+    }
+}
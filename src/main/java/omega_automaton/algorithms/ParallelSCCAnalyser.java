@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.algorithms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nullable;
+
+import omega_automaton.Automaton;
+import omega_automaton.AutomatonState;
+import omega_automaton.Edge;
+import omega_automaton.collections.TranSet;
+import omega_automaton.collections.valuationset.ValuationSet;
+
+/**
+ * Computes the SCCs of the explored transition graph of an automaton with the
+ * forward-backward algorithm on a work-stealing pool: the SCC of a pivot is
+ * the intersection of its forward and backward closure, and the remaining
+ * states split into three independent sub-problems. Before each step, states
+ * without incoming or outgoing edges inside their sub-problem are trimmed as
+ * singleton SCCs, which disposes of long chains without pivot steps.
+ * <p>
+ * The graph is copied into adjacency arrays over dense state ids first, so
+ * all states involved have to be explored. The rows are only read in
+ * parallel if the automaton {@link Automaton#allowsConcurrentReads() allows
+ * concurrent reads}. The SCCs are returned in the order
+ * of {@link SCCAnalyser}: each SCC comes after all SCCs reachable from it.
+ * Among unrelated SCCs the order may differ from the one of
+ * {@link SCCAnalyser}, but it does not depend on the scheduling of the pool.
+ */
+public final class ParallelSCCAnalyser<S extends AutomatonState<S>> {
+
+    // Sub-problems smaller than this are decomposed by the task that found
+    // them instead of being forked.
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 10;
+
+    // Labels of states which are assigned to an SCC or not part of the graph.
+    private static final int DONE = -1;
+    private static final int EXCLUDED = -2;
+
+    private final List<S> states;
+    private final int[][] successors;
+    private final int[][] predecessors;
+
+    // The sub-problem of each state; each state is only written by the task
+    // owning its sub-problem and labels are never reused, so a task can read
+    // the labels of its neighbours without synchronization.
+    private final int[] labels;
+    private final int[] components;
+    private final int[] inDegree;
+    private final int[] outDegree;
+    private final AtomicInteger nextLabel = new AtomicInteger(1);
+    private final AtomicInteger nextComponent = new AtomicInteger();
+
+    private ParallelSCCAnalyser(Automaton<S, ?> automaton, List<S> states, @Nullable TranSet<S> forbiddenEdges) {
+        this.states = states;
+
+        Map<S, Integer> ids = new HashMap<>(2 * states.size());
+        states.forEach(state -> ids.put(state, ids.size()));
+
+        int size = states.size();
+        successors = new int[size][];
+        IntStream range = IntStream.range(0, size);
+        (automaton.allowsConcurrentReads() ? range.parallel() : range).forEach(i -> successors[i] = getSuccessors(automaton, states.get(i), ids, forbiddenEdges));
+
+        int[] counts = new int[size];
+        Arrays.stream(successors).flatMapToInt(Arrays::stream).forEach(j -> counts[j]++);
+        predecessors = new int[size][];
+
+        for (int i = 0; i < size; i++) {
+            predecessors[i] = new int[counts[i]];
+        }
+
+        for (int i = 0; i < size; i++) {
+            for (int j : successors[i]) {
+                predecessors[j][--counts[j]] = i;
+            }
+        }
+
+        labels = new int[size];
+        components = new int[size];
+        inDegree = new int[size];
+        outDegree = new int[size];
+    }
+
+    private static <S extends AutomatonState<S>> int[] getSuccessors(Automaton<S, ?> automaton, S state, Map<S, Integer> ids, @Nullable TranSet<S> forbiddenEdges) {
+        Map<Edge<S>, ValuationSet> row = automaton.getSuccessors(state);
+        int[] successors = new int[row.size()];
+        int size = 0;
+
+        for (Map.Entry<Edge<S>, ValuationSet> entry : row.entrySet()) {
+            Integer id = ids.get(entry.getKey().successor);
+
+            // Rows are short, a linear scan is cheaper than a set.
+            if (id == null || contains(successors, size, id)) {
+                continue;
+            }
+
+            if (forbiddenEdges == null || !forbiddenEdges.containsAll(state, entry.getValue())) {
+                successors[size++] = id;
+            }
+        }
+
+        return size == successors.length ? successors : Arrays.copyOf(successors, size);
+    }
+
+    private static boolean contains(int[] array, int size, int element) {
+        for (int i = 0; i < size; i++) {
+            if (array[i] == element) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public static <S extends AutomatonState<S>> List<Set<S>> SCCsStates(Automaton<S, ?> automaton) {
+        return SCCsStates(automaton, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the SCCs of the states reachable from the initial state, like
+     * {@link SCCAnalyser#SCCsStates(Automaton)}.
+     *
+     * @return the SCCs, where each SCC is listed after the SCCs reachable
+     *         from it.
+     */
+    public static <S extends AutomatonState<S>> List<Set<S>> SCCsStates(Automaton<S, ?> automaton, ForkJoinPool pool) {
+        S initialState = automaton.getInitialState();
+
+        if (initialState == null) {
+            return new ArrayList<>();
+        }
+
+        // The initial state gets id 0.
+        Set<S> explored = automaton.getStates();
+        List<S> states = new ArrayList<>(explored.size());
+        states.add(initialState);
+        explored.forEach(state -> {
+            if (!state.equals(initialState)) {
+                states.add(state);
+            }
+        });
+
+        ParallelSCCAnalyser<S> analyser = new ParallelSCCAnalyser<>(automaton, states, null);
+        analyser.excludeUnreachable();
+        analyser.decompose(pool);
+        return analyser.getSCCs(new int[] { 0 });
+    }
+
+    public static <S extends AutomatonState<S>> List<TranSet<S>> subSCCsTran(Automaton<S, ?> automaton, TranSet<S> SCC, TranSet<S> forbiddenEdges) {
+        return subSCCsTran(automaton, SCC, forbiddenEdges, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the sub-SCCs of {@param SCC} without the edges contained in
+     * {@param forbiddenEdges}, like
+     * {@link SCCAnalyser#subSCCsTran(Automaton, TranSet, TranSet)}. The
+     * forbidden edges are checked concurrently only if the automaton
+     * {@link Automaton#allowsConcurrentReads() allows concurrent reads}, as
+     * the checks use the factory of the automaton.
+     *
+     * @return the sub-SCCs, where each sub-SCC is listed after the sub-SCCs
+     *         reachable from it.
+     */
+    public static <S extends AutomatonState<S>> List<TranSet<S>> subSCCsTran(Automaton<S, ?> automaton, TranSet<S> SCC, TranSet<S> forbiddenEdges,
+            ForkJoinPool pool) {
+        List<S> states = new ArrayList<>(SCC.asMap().keySet());
+        ParallelSCCAnalyser<S> analyser = new ParallelSCCAnalyser<>(automaton, states, forbiddenEdges);
+        analyser.decompose(pool);
+        List<Set<S>> sccs = analyser.getSCCs(IntStream.range(0, states.size()).toArray());
+        return sccs.stream().map(scc -> SCCAnalyser.sccToTran(automaton, scc, forbiddenEdges)).collect(Collectors.toList());
+    }
+
+    /**
+     * Excludes the states not reachable from the state with id 0.
+     */
+    private void excludeUnreachable() {
+        Arrays.fill(labels, EXCLUDED);
+        labels[0] = 0;
+        int[] queue = new int[labels.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+
+        while (head < tail) {
+            for (int w : successors[queue[head++]]) {
+                if (labels[w] == EXCLUDED) {
+                    labels[w] = 0;
+                    queue[tail++] = w;
+                }
+            }
+        }
+    }
+
+    private void decompose(ForkJoinPool pool) {
+        int[] vertices = IntStream.range(0, labels.length).filter(v -> labels[v] == 0).toArray();
+        pool.invoke(new DecompositionTask(vertices, 0));
+    }
+
+    private final class DecompositionTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] vertices;
+        private final int label;
+
+        DecompositionTask(int[] vertices, int label) {
+            this.vertices = vertices;
+            this.label = label;
+        }
+
+        @Override
+        protected void compute() {
+            List<DecompositionTask> forked = new ArrayList<>();
+            Deque<DecompositionTask> work = new ArrayDeque<>();
+            work.push(this);
+
+            while (!work.isEmpty()) {
+                for (DecompositionTask problem : work.pop().split()) {
+                    if (problem.vertices.length >= SEQUENTIAL_THRESHOLD) {
+                        problem.fork();
+                        forked.add(problem);
+                    } else if (problem.vertices.length > 0) {
+                        work.push(problem);
+                    }
+                }
+            }
+
+            forked.forEach(ForkJoinTask::join);
+        }
+
+        /**
+         * Trims the sub-problem, separates the SCC of a pivot and returns the
+         * remaining three sub-problems.
+         */
+        private List<DecompositionTask> split() {
+            int[] remaining = trim(vertices, label);
+
+            if (remaining.length == 0) {
+                return new ArrayList<>();
+            }
+
+            int pivot = remaining[0];
+            int forward = nextLabel.getAndIncrement();
+            int backward = nextLabel.getAndIncrement();
+            int component = nextComponent.getAndIncrement();
+
+            int[] queue = new int[remaining.length];
+            int head = 0;
+            int tail = 0;
+            labels[pivot] = forward;
+            queue[tail++] = pivot;
+
+            while (head < tail) {
+                for (int w : successors[queue[head++]]) {
+                    if (labels[w] == label) {
+                        labels[w] = forward;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+
+            head = 0;
+            tail = 0;
+            labels[pivot] = DONE;
+            components[pivot] = component;
+            queue[tail++] = pivot;
+
+            while (head < tail) {
+                for (int w : predecessors[queue[head++]]) {
+                    if (labels[w] == forward) {
+                        labels[w] = DONE;
+                        components[w] = component;
+                        queue[tail++] = w;
+                    } else if (labels[w] == label) {
+                        labels[w] = backward;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+
+            List<DecompositionTask> problems = new ArrayList<>(3);
+            problems.add(new DecompositionTask(select(remaining, forward), forward));
+            problems.add(new DecompositionTask(select(remaining, backward), backward));
+            problems.add(new DecompositionTask(select(remaining, label), label));
+            return problems;
+        }
+    }
+
+    /**
+     * Repeatedly removes the states of {@param vertices} without incoming or
+     * outgoing edges inside the sub-problem {@param label} and makes each of
+     * them a singleton SCC.
+     *
+     * @return the states that are left.
+     */
+    private int[] trim(int[] vertices, int label) {
+        int[] queue = new int[vertices.length];
+        int tail = 0;
+
+        for (int v : vertices) {
+            inDegree[v] = count(predecessors[v], label);
+            outDegree[v] = count(successors[v], label);
+        }
+
+        for (int v : vertices) {
+            if (inDegree[v] == 0 || outDegree[v] == 0) {
+                queue[tail++] = removeSingleton(v);
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+
+            for (int w : successors[v]) {
+                if (labels[w] == label && --inDegree[w] == 0) {
+                    queue[tail++] = removeSingleton(w);
+                }
+            }
+
+            for (int w : predecessors[v]) {
+                if (labels[w] == label && --outDegree[w] == 0) {
+                    queue[tail++] = removeSingleton(w);
+                }
+            }
+        }
+
+        return tail == 0 ? vertices : select(vertices, label);
+    }
+
+    private int count(int[] neighbours, int label) {
+        int count = 0;
+
+        for (int w : neighbours) {
+            if (labels[w] == label) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private int removeSingleton(int v) {
+        labels[v] = DONE;
+        components[v] = nextComponent.getAndIncrement();
+        return v;
+    }
+
+    private int[] select(int[] vertices, int label) {
+        return Arrays.stream(vertices).filter(v -> labels[v] == label).toArray();
+    }
+
+    /**
+     * Orders the SCCs by a depth-first search over the condensation, which
+     * visits the SCCs of the states {@param roots} in the given order and the
+     * successors of each SCC in the order of the ids of their states and of
+     * their edges. The ids of the SCCs depend on the scheduling of the pool
+     * and are not used for ordering.
+     */
+    private List<Set<S>> getSCCs(int[] roots) {
+        int count = nextComponent.get();
+        int[][] members = new int[count][];
+        int[] sizes = new int[count];
+
+        for (int v = 0; v < labels.length; v++) {
+            if (labels[v] == DONE) {
+                sizes[components[v]]++;
+            }
+        }
+
+        for (int c = 0; c < count; c++) {
+            members[c] = new int[sizes[c]];
+            sizes[c] = 0;
+        }
+
+        for (int v = 0; v < labels.length; v++) {
+            if (labels[v] == DONE) {
+                members[components[v]][sizes[components[v]]++] = v;
+            }
+        }
+
+        List<Set<S>> result = new ArrayList<>(count);
+        boolean[] visited = new boolean[count];
+        int[] stack = new int[count];
+        int[] member = new int[count];
+        int[] edge = new int[count];
+
+        for (int root : roots) {
+            if (labels[root] != DONE || visited[components[root]]) {
+                continue;
+            }
+
+            int depth = 0;
+            stack[depth++] = components[root];
+            visited[components[root]] = true;
+
+            while (depth > 0) {
+                int c = stack[depth - 1];
+                int next = -1;
+
+                while (next < 0 && member[c] < members[c].length) {
+                    int[] edges = successors[members[c][member[c]]];
+
+                    if (edge[c] < edges.length) {
+                        int d = components[edges[edge[c]++]];
+
+                        if (!visited[d]) {
+                            next = d;
+                        }
+                    } else {
+                        member[c]++;
+                        edge[c] = 0;
+                    }
+                }
+
+                if (next >= 0) {
+                    visited[next] = true;
+                    stack[depth++] = next;
+                } else {
+                    depth--;
+                    Set<S> scc = new HashSet<>();
+
+                    for (int v : members[c]) {
+                        scc.add(states.get(v));
+                    }
+
+                    result.add(scc);
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.algorithms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import omega_automaton.Automaton;
+import omega_automaton.AutomatonState;
+import omega_automaton.Edge;
+import omega_automaton.collections.valuationset.ValuationSet;
+
+/**
+ * Computes the coarsest partition of the states of an automaton such that
+ * equivalent states have, for every valuation, edges with the same acceptance
+ * marks into equivalent states. Merging equivalent states preserves the
+ * language for every acceptance condition defined by the marks of the edges.
+ * <p>
+ * The partition is refined by signatures: the signature of a state consists
+ * of its block and, for each pair of successor block and acceptance mask, the
+ * union of the labels of the edges with this pair. Labels and masks are
+ * interned once, such that signatures are arrays of integers and no letters
+ * are enumerated.
+ * <p>
+ * Only states whose signature may have changed are examined again. When a
+ * block is split, the largest part keeps the number of the block and only the
+ * predecessors of the other parts are marked, as in Hopcroft's and Valmari's
+ * algorithms. Since a state only changes its block number if it ends up in a
+ * part of at most half the size of the block, each edge is followed
+ * backwards O(log n) times.
+ */
+public final class PartitionRefinement<S extends AutomatonState<S>> {
+
+    private final List<S> states = new ArrayList<>();
+    private final Map<S, Integer> ids = new HashMap<>();
+
+    private int[] rowOffsets;
+    private int[] successors;
+    private int[] masks;
+    private int[] labels;
+
+    // The predecessor index of the edges above.
+    private int[] predecessorOffsets;
+    private int[] predecessors;
+
+    private final List<ValuationSet> labelPool = new ArrayList<>();
+    private final Map<ValuationSet, Integer> labelIds = new HashMap<>();
+    private final Map<List<Integer>, Integer> unionIds = new HashMap<>();
+    private final List<ValuationSet> unions = new ArrayList<>();
+
+    private PartitionRefinement(Automaton<S, ?> automaton) {
+        automaton.generate();
+
+        S initialState = automaton.getInitialState();
+
+        if (initialState != null) {
+            ids.put(initialState, 0);
+            states.add(initialState);
+        }
+
+        for (S state : automaton.getStates()) {
+            if (!ids.containsKey(state)) {
+                ids.put(state, states.size());
+                states.add(state);
+            }
+        }
+
+        int edges = 0;
+
+        for (int i = 0; i < states.size(); i++) {
+            for (Edge<S> edge : automaton.getSuccessors(states.get(i)).keySet()) {
+                if (!ids.containsKey(edge.successor)) {
+                    ids.put(edge.successor, states.size());
+                    states.add(edge.successor);
+                }
+
+                edges++;
+            }
+        }
+
+        rowOffsets = new int[states.size() + 1];
+        successors = new int[edges];
+        masks = new int[edges];
+        labels = new int[edges];
+
+        Map<BitSet, Integer> maskIds = new HashMap<>();
+        int edge = 0;
+
+        for (int i = 0; i < states.size(); i++) {
+            rowOffsets[i] = edge;
+
+            for (Map.Entry<Edge<S>, ValuationSet> entry : automaton.getSuccessors(states.get(i)).entrySet()) {
+                successors[edge] = ids.get(entry.getKey().successor);
+                masks[edge] = maskIds.computeIfAbsent(entry.getKey().getAcceptance(), key -> maskIds.size());
+                labels[edge] = internLabel(entry.getValue());
+                edge++;
+            }
+        }
+
+        rowOffsets[states.size()] = edge;
+
+        predecessorOffsets = new int[states.size() + 1];
+        predecessors = new int[edges];
+
+        for (int successor : successors) {
+            predecessorOffsets[successor + 1]++;
+        }
+
+        for (int i = 0; i < states.size(); i++) {
+            predecessorOffsets[i + 1] += predecessorOffsets[i];
+        }
+
+        int[] next = Arrays.copyOf(predecessorOffsets, states.size());
+
+        for (int i = 0; i < states.size(); i++) {
+            for (int j = rowOffsets[i]; j < rowOffsets[i + 1]; j++) {
+                predecessors[next[successors[j]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Computes the partition of the states reachable from the initial state
+     * and of the states already explored in {@param automaton}.
+     *
+     * @return a map from each state to the representative of its block. The
+     *         representative of the block of the initial state is the initial
+     *         state.
+     */
+    public static <S extends AutomatonState<S>> Map<S, S> computeRepresentatives(Automaton<S, ?> automaton) {
+        PartitionRefinement<S> refinement = new PartitionRefinement<>(automaton);
+        int[] blocks = refinement.refine();
+
+        Map<S, S> representatives = new LinkedHashMap<>();
+        List<S> blockRepresentatives = new ArrayList<>();
+
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] == blockRepresentatives.size()) {
+                blockRepresentatives.add(refinement.states.get(i));
+            }
+
+            representatives.put(refinement.states.get(i), blockRepresentatives.get(blocks[i]));
+        }
+
+        refinement.unions.forEach(ValuationSet::free);
+        return representatives;
+    }
+
+    /**
+     * @return the block of each state. Blocks are numbered in the order of
+     *         their first state.
+     */
+    private int[] refine() {
+        Partition partition = new Partition(states.size());
+        Deque<Integer> touched = new ArrayDeque<>();
+
+        for (int i = 0; i < states.size(); i++) {
+            if (partition.mark(i)) {
+                touched.add(partition.blocks[i]);
+            }
+        }
+
+        while (!touched.isEmpty()) {
+            // Marking reorders the blocks, so the moved states are copied
+            // first.
+            List<int[]> moved = new ArrayList<>();
+
+            for (int block : split(partition, touched.remove())) {
+                moved.add(Arrays.copyOfRange(partition.elements, partition.first[block], partition.end[block]));
+            }
+
+            for (int[] part : moved) {
+                for (int state : part) {
+                    for (int j = predecessorOffsets[state]; j < predecessorOffsets[state + 1]; j++) {
+                        if (partition.mark(predecessors[j])) {
+                            touched.add(partition.blocks[predecessors[j]]);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Number the blocks in the order of their first state.
+        int[] numbers = new int[partition.count];
+        Arrays.fill(numbers, -1);
+        int[] blocks = new int[states.size()];
+        int count = 0;
+
+        for (int i = 0; i < blocks.length; i++) {
+            int block = partition.blocks[i];
+
+            if (numbers[block] == -1) {
+                numbers[block] = count++;
+            }
+
+            blocks[i] = numbers[block];
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Splits {@param block} by the signatures of its marked states and unmarks
+     * them. The unmarked states share one signature, which is computed for
+     * one of them. The largest part keeps the number of the block.
+     *
+     * @return the blocks whose states changed their block number.
+     */
+    private List<Integer> split(Partition partition, int block) {
+        int first = partition.first[block];
+        int markedEnd = partition.markedEnd[block];
+        int end = partition.end[block];
+        partition.markedEnd[block] = first;
+
+        Signature unmarked = markedEnd < end ? signature(partition.elements[markedEnd], partition.blocks) : null;
+        Map<Signature, List<Integer>> signatures = new LinkedHashMap<>();
+
+        for (int i = first; i < markedEnd; i++) {
+            int state = partition.elements[i];
+            Signature signature = signature(state, partition.blocks);
+            signatures.computeIfAbsent(signature.equals(unmarked) ? unmarked : signature, key -> new ArrayList<>()).add(state);
+        }
+
+        List<Integer> unchanged = unmarked == null ? null : signatures.remove(unmarked);
+
+        if (signatures.isEmpty() || (unmarked == null && signatures.size() == 1)) {
+            return Collections.emptyList();
+        }
+
+        // The parts with a new signature are placed at the start of the block,
+        // followed by the marked states keeping their signature and the
+        // unmarked states.
+        List<int[]> ranges = new ArrayList<>();
+        int position = first;
+
+        for (List<Integer> part : signatures.values()) {
+            int from = position;
+
+            for (int state : part) {
+                partition.place(state, position++);
+            }
+
+            ranges.add(new int[] { from, position });
+        }
+
+        int remaining = position;
+
+        if (unchanged != null) {
+            for (int state : unchanged) {
+                partition.place(state, position++);
+            }
+        }
+
+        if (remaining < end) {
+            ranges.add(new int[] { remaining, end });
+        }
+
+        int[] largest = ranges.get(ranges.size() - 1);
+
+        for (int[] range : ranges) {
+            if (range[1] - range[0] > largest[1] - largest[0]) {
+                largest = range;
+            }
+        }
+
+        List<Integer> moved = new ArrayList<>();
+        partition.first[block] = largest[0];
+        partition.markedEnd[block] = largest[0];
+        partition.end[block] = largest[1];
+
+        for (int[] range : ranges) {
+            if (range != largest) {
+                moved.add(partition.createBlock(range[0], range[1]));
+            }
+        }
+
+        return moved;
+    }
+
+    private Signature signature(int state, int[] blocks) {
+        int start = rowOffsets[state];
+        int size = rowOffsets[state + 1] - start;
+        long[] keys = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) blocks[successors[start + i]] << 32) | masks[start + i];
+        }
+
+        Integer[] order = new Integer[size];
+
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (x, y) -> keys[x] != keys[y] ? Long.compare(keys[x], keys[y]) : Integer.compare(labels[start + x], labels[start + y]));
+
+        int[] values = new int[1 + 3 * size];
+        int length = 1;
+        values[0] = blocks[state];
+
+        for (int i = 0; i < size;) {
+            int j = i + 1;
+
+            while (j < size && keys[order[j]] == keys[order[i]]) {
+                j++;
+            }
+
+            values[length++] = (int) (keys[order[i]] >>> 32);
+            values[length++] = (int) keys[order[i]];
+            values[length++] = j == i + 1 ? labels[start + order[i]] : union(start, order, i, j);
+            i = j;
+        }
+
+        return new Signature(Arrays.copyOf(values, length));
+    }
+
+    private int union(int start, Integer[] order, int from, int to) {
+        List<Integer> members = new ArrayList<>(to - from);
+
+        for (int k = from; k < to; k++) {
+            int label = labels[start + order[k]];
+
+            if (members.isEmpty() || members.get(members.size() - 1) != label) {
+                members.add(label);
+            }
+        }
+
+        if (members.size() == 1) {
+            return members.get(0);
+        }
+
+        return unionIds.computeIfAbsent(members, key -> {
+            ValuationSet union = labelPool.get(key.get(0)).copy();
+
+            for (int k = 1; k < key.size(); k++) {
+                union.addAll(labelPool.get(key.get(k)));
+            }
+
+            Integer id = labelIds.get(union);
+
+            if (id != null) {
+                union.free();
+                return id;
+            }
+
+            unions.add(union);
+            return internLabel(union);
+        });
+    }
+
+    private int internLabel(ValuationSet label) {
+        return labelIds.computeIfAbsent(label, key -> {
+            labelPool.add(key);
+            return labelPool.size() - 1;
+        });
+    }
+
+    /**
+     * A refinable partition of the states 0 to n - 1. The states of a block
+     * are stored contiguously in {@code elements} with the marked states
+     * first.
+     */
+    private static final class Partition {
+
+        private final int[] elements;
+        private final int[] location;
+        private final int[] blocks;
+        private final int[] first;
+        private final int[] markedEnd;
+        private final int[] end;
+        private int count;
+
+        Partition(int size) {
+            elements = new int[size];
+            location = new int[size];
+            blocks = new int[size];
+            first = new int[size];
+            markedEnd = new int[size];
+            end = new int[size];
+
+            for (int i = 0; i < size; i++) {
+                elements[i] = i;
+                location[i] = i;
+            }
+
+            if (size > 0) {
+                end[0] = size;
+                count = 1;
+            }
+        }
+
+        /**
+         * @return true if {@param state} is the first marked state of its
+         *         block.
+         */
+        boolean mark(int state) {
+            int block = blocks[state];
+            int position = location[state];
+
+            if (position < markedEnd[block]) {
+                return false;
+            }
+
+            place(elements[markedEnd[block]], position);
+            place(state, markedEnd[block]);
+            return ++markedEnd[block] == first[block] + 1;
+        }
+
+        void place(int state, int position) {
+            elements[position] = state;
+            location[state] = position;
+        }
+
+        int createBlock(int from, int to) {
+            int block = count++;
+            first[block] = from;
+            markedEnd[block] = from;
+            end[block] = to;
+
+            for (int i = from; i < to; i++) {
+                blocks[elements[i]] = block;
+            }
+
+            return block;
+        }
+    }
+
+    private static final class Signature {
+
+        private final int[] values;
+        private final int hashCode;
+
+        Signature(int[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Signature && hashCode == ((Signature) o).hashCode && Arrays.equals(values, ((Signature) o).values));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -19,9 +19,10 @@ package omega_automaton.algorithms;
 
 import omega_automaton.Automaton;
 import omega_automaton.AutomatonState;
-import omega_automaton.collections.Collections3;
-import omega_automaton.collections.TarjanStack;
+import omega_automaton.CompactAutomaton;
+import omega_automaton.Edge;
 import omega_automaton.collections.TranSet;
+import omega_automaton.collections.valuationset.ValuationSet;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -30,13 +31,9 @@ import java.util.stream.Collectors;
  * @author Christopher Ziegler
  */
 public class SCCAnalyser<S extends AutomatonState<S>> {
-    private final Map<S, Integer> lowlink = new HashMap<>();
-    private final Map<S, Integer> number = new HashMap<>();
-    private final Deque<S> stack = new TarjanStack<>();
     private final Automaton<S, ?> automaton;
     private final TranSet<S> forbiddenEdges;
     private final Set<S> allowedStates;
-    private int n = 0;
 
     private SCCAnalyser(Automaton<S, ?> a) {
         this(a, a.getStates(), new TranSet<>(a.getFactory()));
@@ -51,11 +48,12 @@ public class SCCAnalyser<S extends AutomatonState<S>> {
     /**
      * This method computes the SCCs of the state-/transition-graph of the
      * automaton. It is based on Tarjan's strongly connected component
-     * algorithm. It runs in linear time, assuming the Map-operation get and put
-     * and containsKey (and the onStack set-operations) take constant time,
-     * which is acc. to java Documentation the case if the hash-function is good
+     * algorithm, with an explicit stack instead of recursion. It runs in linear
+     * time, assuming the Map-operation get and put take constant time, which
+     * is acc. to java Documentation the case if the hash-function is good
      * enough, also the checks for forbiddenEdges and allowedState need to be
-     * constant for the function to run in linear time.
+     * constant for the function to run in linear time. On a
+     * {@link CompactAutomaton} the search runs on the state ids.
      *
      * @param a:
      *            Automaton, for which the class is analysed
@@ -66,9 +64,16 @@ public class SCCAnalyser<S extends AutomatonState<S>> {
      *         condensation graph, a is in the list before b
      */
     public static <S extends AutomatonState<S>> List<Set<S>> SCCsStates(Automaton<S, ?> a) {
+        S initialState = a.getInitialState();
+
+        if (initialState == null) {
+            return new ArrayList<>();
+        }
+
         SCCAnalyser<S> s = new SCCAnalyser<>(a);
-        s.stack.push(a.getInitialState());
-        return s.SCCsStatesRecursively();
+        List<Set<S>> result = new ArrayList<>();
+        s.search(s.createSearch(), Collections.singleton(initialState), result);
+        return result;
     }
 
     /**
@@ -90,52 +95,41 @@ public class SCCAnalyser<S extends AutomatonState<S>> {
 
     private List<TranSet<S>> subSCCsTranPrivate() {
         List<Set<S>> resultStates = new ArrayList<>();
-        Set<S> notYetProcessed = new HashSet<>(allowedStates);
+        search(createSearch(), new HashSet<>(allowedStates), resultStates);
+        return resultStates.stream().map(s -> sccToTran(automaton, s, forbiddenEdges)).collect(Collectors.toList());
+    }
 
-        while (!notYetProcessed.isEmpty()) {
-            S state = Collections3.removeElement(notYetProcessed);
-            stack.push(state);
-            resultStates.addAll(SCCsStatesRecursively());
-            resultStates.forEach(notYetProcessed::removeAll);
+    private Search<S> createSearch() {
+        if (automaton instanceof CompactAutomaton) {
+            return new CompactSearch<>((CompactAutomaton<S, ?>) automaton, allowedStates, forbiddenEdges);
         }
 
-        return resultStates.stream().map(s -> sccToTran(automaton, s, forbiddenEdges)).collect(Collectors.toList());
+        return new LazySearch<>(automaton, allowedStates, forbiddenEdges);
     }
 
-    private List<Set<S>> SCCsStatesRecursively() {
-        n++;
-        S v = stack.peek();
-        lowlink.put(v, n);
-        number.put(v, n);
-        List<Set<S>> result = new ArrayList<>();
+    /**
+     * Runs Tarjan's algorithm from each of the {@param roots} not visited yet
+     * and appends the SCCs to {@param result} in the order they are completed.
+     */
+    private void search(Search<S> search, Collection<S> roots, List<Set<S>> result) {
+        for (S root : roots) {
+            int id = search.getId(root);
 
-        automaton.getSuccessors(v).forEach((edge, valuation) -> {
-            // edge not forbidden
-            if (!forbiddenEdges.containsAll(v, valuation)) {
-                S w = edge.successor;
-
-                if (allowedStates.contains(w) && !number.containsKey(w)) {
-                    stack.push(w);
-                    result.addAll(SCCsStatesRecursively());
-                    lowlink.put(v, Math.min(lowlink.get(v), lowlink.get(w)));
-                } else if (allowedStates.contains(w) && number.get(w) < number.get(v) && stack.contains(w)) {
-                    lowlink.put(v, Math.min(lowlink.get(v), number.get(w)));
-                }
+            if (search.isVisited(id)) {
+                continue;
             }
-        });
 
-        if (lowlink.get(v).equals(number.get(v))) {
-            Set<S> set = new HashSet<>();
+            search.search(id, (members, from, to, component) -> {
+                Set<S> scc = new HashSet<>();
 
-            while (!stack.isEmpty() && number.get(stack.peek()) >= number.get(v)) {
-                S w = stack.pop();
-                set.add(w);
-            }
+                for (int i = from; i < to; i++) {
+                    scc.add(search.getState(members[i]));
+                }
 
-            result.add(set);
+                result.add(scc);
+                return false;
+            });
         }
-
-        return result;
     }
 
     public static <S extends AutomatonState<S>> TranSet<S> sccToTran(Automaton<S, ?> aut, Set<S> scc, TranSet<S> forbiddenEdges) {
@@ -150,4 +144,328 @@ public class SCCAnalyser<S extends AutomatonState<S>> {
         result.removeAll(forbiddenEdges);
         return result;
     }
+
+    /**
+     * A graph over dense node ids. The edges of each node are numbered
+     * consecutively from {@code getRowStart(node)} to
+     * {@code getRowEnd(node) - 1}. The row of a node is first requested when
+     * the node is visited, so it may be computed on demand.
+     */
+    interface IdGraph {
+        int getRowStart(int node);
+
+        int getRowEnd(int node);
+
+        int getSuccessorId(int edge);
+
+        /**
+         * @return false, if the search has to ignore {@param edge} of
+         *         {@param node}.
+         */
+        default boolean isAllowed(int node, int edge) {
+            return true;
+        }
+    }
+
+    interface SCCVisitor {
+        /**
+         * Called for each SCC in the order of completion, which is a reverse
+         * topological order. The members are {@code members[from]} to
+         * {@code members[to - 1]}; the array must not be modified.
+         *
+         * @return true, if the search has to stop.
+         */
+        boolean visit(int[] members, int from, int to, int component);
+    }
+
+    /**
+     * Tarjan's algorithm on an {@link IdGraph} with an explicit stack of
+     * nodes and edge cursors instead of recursion. Several searches from
+     * different roots can be run on the same instance; nodes visited by an
+     * earlier search are not visited again.
+     */
+    static class IdSearch {
+        private final IdGraph graph;
+
+        // DFS number and lowlink of each node, -1 if not visited yet.
+        private int[] index = new int[0];
+        private int[] lowlink = new int[0];
+        private int[] component = new int[0];
+        private int counter;
+        private int components;
+
+        // The Tarjan stack and its members.
+        private int[] stack = new int[16];
+        private int stackSize;
+        private final BitSet onStack = new BitSet();
+
+        // The explicit DFS call stack: the nodes and their next edge.
+        private int[] path = new int[16];
+        private int[] cursor = new int[16];
+
+        IdSearch(IdGraph graph) {
+            this.graph = graph;
+        }
+
+        boolean isVisited(int node) {
+            return node < index.length && index[node] != -1;
+        }
+
+        /**
+         * @return the number of the SCC of {@param node} in completion order
+         *         or -1, if its SCC is not completed yet.
+         */
+        int getComponent(int node) {
+            return node < component.length ? component[node] : -1;
+        }
+
+        /**
+         * Runs Tarjan's algorithm from {@param root}, which must not be
+         * visited yet, and reports the SCCs to {@param visitor}.
+         *
+         * @return true, if the visitor stopped the search.
+         */
+        boolean search(int root, SCCVisitor visitor) {
+            int depth = 0;
+            visit(root, depth++);
+
+            while (depth > 0) {
+                int v = path[depth - 1];
+
+                if (cursor[depth - 1] < graph.getRowEnd(v)) {
+                    int edge = cursor[depth - 1]++;
+
+                    if (!graph.isAllowed(v, edge)) {
+                        continue;
+                    }
+
+                    int w = graph.getSuccessorId(edge);
+
+                    if (!isVisited(w)) {
+                        visit(w, depth++);
+                    } else if (onStack.get(w)) {
+                        lowlink[v] = Math.min(lowlink[v], index[w]);
+                    }
+
+                    continue;
+                }
+
+                depth--;
+
+                if (lowlink[v] == index[v]) {
+                    int end = stackSize;
+                    int member;
+
+                    do {
+                        member = stack[--stackSize];
+                        onStack.clear(member);
+                        component[member] = components;
+                    } while (member != v);
+
+                    if (visitor.visit(stack, stackSize, end, components++)) {
+                        return true;
+                    }
+                }
+
+                if (depth > 0) {
+                    int parent = path[depth - 1];
+                    lowlink[parent] = Math.min(lowlink[parent], lowlink[v]);
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Numbers {@param node}, pushes it on the Tarjan stack and on the DFS
+         * stack at {@param depth}.
+         */
+        private void visit(int node, int depth) {
+            if (node >= index.length) {
+                int length = Math.max(node + 1, 2 * index.length);
+                int old = index.length;
+                index = Arrays.copyOf(index, length);
+                lowlink = Arrays.copyOf(lowlink, length);
+                component = Arrays.copyOf(component, length);
+                Arrays.fill(index, old, length, -1);
+                Arrays.fill(component, old, length, -1);
+            }
+
+            index[node] = lowlink[node] = counter++;
+
+            if (stackSize == stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stackSize);
+            }
+
+            stack[stackSize++] = node;
+            onStack.set(node);
+
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, 2 * depth);
+                cursor = Arrays.copyOf(cursor, 2 * depth);
+            }
+
+            path[depth] = node;
+            cursor[depth] = graph.getRowStart(node);
+        }
+    }
+
+    private abstract static class Search<S> extends IdSearch {
+        Search(IdGraph graph) {
+            super(graph);
+        }
+
+        abstract int getId(S state);
+
+        abstract S getState(int id);
+    }
+
+    /**
+     * Numbers the states in the order of discovery and stores the ids of the
+     * allowed successors of each state when it is visited.
+     */
+    private static final class LazySearch<S extends AutomatonState<S>> extends Search<S> {
+        private final Map<S, Integer> ids;
+        private final List<S> states;
+
+        private LazySearch(LazyGraph<S> graph) {
+            super(graph);
+            this.ids = graph.ids;
+            this.states = graph.states;
+        }
+
+        LazySearch(Automaton<S, ?> automaton, Set<S> allowedStates, TranSet<S> forbiddenEdges) {
+            this(new LazyGraph<>(automaton, allowedStates, forbiddenEdges));
+        }
+
+        @Override
+        int getId(S state) {
+            return ids.computeIfAbsent(state, key -> {
+                states.add(key);
+                return states.size() - 1;
+            });
+        }
+
+        @Override
+        S getState(int id) {
+            return states.get(id);
+        }
+    }
+
+    private static final class LazyGraph<S extends AutomatonState<S>> implements IdGraph {
+        private final Automaton<S, ?> automaton;
+        private final Set<S> allowedStates;
+        private final TranSet<S> forbiddenEdges;
+
+        private final Map<S, Integer> ids = new HashMap<>();
+        private final List<S> states = new ArrayList<>();
+
+        // Rows of the visited states; rowStart is -1 for other states.
+        private int[] rowStart = new int[16];
+        private int[] rowEnd = new int[16];
+        private int[] successors = new int[16];
+        private int edges;
+
+        LazyGraph(Automaton<S, ?> automaton, Set<S> allowedStates, TranSet<S> forbiddenEdges) {
+            this.automaton = automaton;
+            this.allowedStates = allowedStates;
+            this.forbiddenEdges = forbiddenEdges;
+            Arrays.fill(rowStart, -1);
+        }
+
+        @Override
+        public int getRowStart(int node) {
+            if (node >= rowStart.length) {
+                int old = rowStart.length;
+                rowStart = Arrays.copyOf(rowStart, Math.max(node + 1, 2 * old));
+                rowEnd = Arrays.copyOf(rowEnd, rowStart.length);
+                Arrays.fill(rowStart, old, rowStart.length, -1);
+            }
+
+            if (rowStart[node] == -1) {
+                S state = states.get(node);
+                rowStart[node] = edges;
+
+                for (Map.Entry<Edge<S>, ValuationSet> entry : automaton.getSuccessors(state).entrySet()) {
+                    S successor = entry.getKey().successor;
+
+                    // edge not forbidden
+                    if (!allowedStates.contains(successor) || forbiddenEdges.containsAll(state, entry.getValue())) {
+                        continue;
+                    }
+
+                    Integer id = ids.get(successor);
+
+                    if (id == null) {
+                        id = states.size();
+                        ids.put(successor, id);
+                        states.add(successor);
+                    }
+
+                    if (edges == successors.length) {
+                        successors = Arrays.copyOf(successors, 2 * edges);
+                    }
+
+                    successors[edges++] = id;
+                }
+
+                rowEnd[node] = edges;
+            }
+
+            return rowStart[node];
+        }
+
+        @Override
+        public int getRowEnd(int node) {
+            return rowEnd[node];
+        }
+
+        @Override
+        public int getSuccessorId(int edge) {
+            return successors[edge];
+        }
+    }
+
+    /**
+     * Runs on the arrays of a {@link CompactAutomaton}.
+     */
+    private static final class CompactSearch<S extends AutomatonState<S>> extends Search<S> {
+        private final CompactAutomaton<S, ?> automaton;
+
+        CompactSearch(CompactAutomaton<S, ?> automaton, Set<S> allowedStates, TranSet<S> forbiddenEdges) {
+            super(new IdGraph() {
+                @Override
+                public int getRowStart(int node) {
+                    return automaton.getRowStart(node);
+                }
+
+                @Override
+                public int getRowEnd(int node) {
+                    return automaton.getRowEnd(node);
+                }
+
+                @Override
+                public int getSuccessorId(int edge) {
+                    return automaton.getSuccessorId(edge);
+                }
+
+                @Override
+                public boolean isAllowed(int node, int edge) {
+                    return allowedStates.contains(automaton.getState(automaton.getSuccessorId(edge)))
+                        && !forbiddenEdges.containsAll(automaton.getState(node), automaton.getEdgeLabel(edge));
+                }
+            });
+            this.automaton = automaton;
+        }
+
+        @Override
+        int getId(S state) {
+            return automaton.getId(state);
+        }
+
+        @Override
+        S getState(int id) {
+            return automaton.getState(id);
+        }
+    }
 }
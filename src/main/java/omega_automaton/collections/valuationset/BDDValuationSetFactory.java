@@ -17,37 +17,161 @@
 
 package omega_automaton.collections.valuationset;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.PrimitiveIterator;
-import java.util.stream.IntStream;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.google.common.collect.BiMap;
-import com.google.common.collect.Sets;
+import com.google.common.collect.MapMaker;
 
 import jdd.bdd.BDD;
 import jhoafparser.ast.AtomLabel;
 import jhoafparser.ast.BooleanExpression;
-import omega_automaton.collections.Collections3;
+import omega_automaton.collections.Tuple;
 
+/**
+ * Valuation sets represented by reference-counted BDDs of jdd.
+ * <p>
+ * The factory is not thread-safe, not even for concurrent readers: the cube,
+ * cover, implication and model count caches are updated by read-only calls
+ * such as {@link ValuationSet#toExpression(BiMap)},
+ * {@link ValuationSet#containsAll(ValuationSet)} or
+ * {@link ValuationSet#countModels()}. Wrap it in a
+ * {@link SynchronizedValuationSetFactory} to share it between threads.
+ */
 public class BDDValuationSetFactory implements ValuationSetFactory {
 
+    // The variable of the i-th atomic proposition and the atomic proposition
+    // of each level of the variable order.
     final int vars[];
-    final BDD factory;
+    private final int[] propositions;
+    BDD factory;
+    private final int initialNodes;
+
+    // The live valuation sets, which are rebuilt when the variables are
+    // reordered. Only maintained if reordering was enabled on construction.
+    @Nullable
+    private final Set<BDDValuationSet> registry;
+
+    @Nullable
+    private Map<BDDValuationSet, Throwable> liveSets;
+
+    private static final int CACHE_SIZE = 1 << 12;
+    private static final int IMPLIES = 0;
+    private static final int DISJOINT = 1;
+
+    // Direct-mapped cache of the predicate walks. An entry is only valid in
+    // the epoch it was written in; each top-level call starts a new epoch, as
+    // the node ids may be reused by the garbage collection of jdd between
+    // calls.
+    private final int[] cacheLeft = new int[CACHE_SIZE];
+    private final int[] cacheRight = new int[CACHE_SIZE];
+    private final int[] cacheEpoch = new int[CACHE_SIZE];
+    private final boolean[] cacheResult = new boolean[CACHE_SIZE];
+    private int epoch;
+
+    private static final int COVER_CACHE_SIZE = 1 << 10;
+    private static final int CUBE_CACHE_SIZE = 1 << 12;
+    private static final int MODEL_CACHE_SIZE = 1 << 12;
+
+    private final Map<Tuple<BitSet, BitSet>, Integer> cubes = new LinkedHashMap<Tuple<BitSet, BitSet>, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Tuple<BitSet, BitSet>, Integer> eldest) {
+            if (size() > CUBE_CACHE_SIZE) {
+                factory.deref(eldest.getValue());
+                return true;
+            }
+
+            return false;
+        }
+    };
+
+    private final Map<CoverKey, BooleanExpression<AtomLabel>> covers = new LinkedHashMap<CoverKey, BooleanExpression<AtomLabel>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CoverKey, BooleanExpression<AtomLabel>> eldest) {
+            if (size() > COVER_CACHE_SIZE) {
+                factory.deref(eldest.getKey().bdd);
+                return true;
+            }
+
+            return false;
+        }
+    };
+
+    // Model counts of nodes relative to their variable, see
+    // BDDValuationSet#countModels(). The cache holds a reference on its nodes.
+    private final Map<Integer, BigInteger> modelCounts = new LinkedHashMap<Integer, BigInteger>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BigInteger> eldest) {
+            if (size() > MODEL_CACHE_SIZE) {
+                factory.deref(eldest.getKey());
+                return true;
+            }
+
+            return false;
+        }
+    };
 
     public BDDValuationSetFactory(int alphabet) {
+        this(alphabet, false);
+    }
+
+    /**
+     * @param reordering
+     *            whether the variable order can be changed by
+     *            {@link BDDValuationSetFactory#reorder(int[])} and
+     *            {@link BDDValuationSetFactory#searchOrder()}. This requires to
+     *            keep track of all live valuation sets, and their hash codes
+     *            are computed from the represented function instead of the
+     *            node, such that they do not change when the variables are
+     *            reordered.
+     */
+    public BDDValuationSetFactory(int alphabet, boolean reordering) {
+        this(alphabet, reordering, (1024 * alphabet * alphabet) + 256);
+    }
+
+    /**
+     * @param initialNodes
+     *            the initial size of the node table, which grows on demand.
+     */
+    BDDValuationSetFactory(int alphabet, boolean reordering, int initialNodes) {
+        this.initialNodes = initialNodes;
         vars = new int[alphabet];
-        factory = new BDD((1024 * alphabet * alphabet) + 256, 1000);
+        propositions = new int[alphabet];
+        factory = createBDD();
+        registry = reordering ? Collections.newSetFromMap(new MapMaker().weakKeys().makeMap()) : null;
 
         for (int i = 0; i < alphabet; i++) {
             vars[i] = factory.createVar();
+            propositions[i] = i;
         }
     }
 
+    private BDD createBDD() {
+        return new BDD(initialNodes, 1000);
+    }
+
     @Override
     public BDDValuationSet createEmptyValuationSet() {
         return new BDDValuationSet(BDD.ZERO);
@@ -65,7 +189,89 @@ public class BDDValuationSetFactory implements ValuationSetFactory {
 
     @Override
     public BDDValuationSet createValuationSet(BitSet valuation, BitSet restrictedAlphabet) {
-        return new BDDValuationSet(createBDD(valuation, restrictedAlphabet.stream().iterator()));
+        return new BDDValuationSet(createBDD(valuation, restrictedAlphabet));
+    }
+
+    /**
+     * Builds the cubes of {@param valuations} and joins them pairwise in a
+     * balanced tree.
+     */
+    @Override
+    public BDDValuationSet createValuationSet(Collection<BitSet> valuations, BitSet restrictedAlphabet) {
+        int[] operands = new int[valuations.size()];
+        int i = 0;
+
+        for (BitSet valuation : valuations) {
+            operands[i++] = factory.ref(createBDD(valuation, restrictedAlphabet));
+        }
+
+        return fromReferenced(combine(operands, false));
+    }
+
+    /**
+     * Joins the sets pairwise in a balanced tree, which keeps the intermediate
+     * BDDs small compared to adding the sets one by one.
+     */
+    @Override
+    public BDDValuationSet union(Collection<? extends ValuationSet> valuationSets) {
+        return fromReferenced(combine(referenceAll(valuationSets), false));
+    }
+
+    /**
+     * Intersects the sets pairwise in a balanced tree.
+     */
+    @Override
+    public BDDValuationSet intersection(Collection<? extends ValuationSet> valuationSets) {
+        return fromReferenced(combine(referenceAll(valuationSets), true));
+    }
+
+    private int[] referenceAll(Collection<? extends ValuationSet> valuationSets) {
+        int[] operands = new int[valuationSets.size()];
+        int i = 0;
+
+        for (ValuationSet valuationSet : valuationSets) {
+            if (!(valuationSet instanceof BDDValuationSet)) {
+                throw new UnsupportedOperationException();
+            }
+
+            operands[i++] = factory.ref(((BDDValuationSet) valuationSet).index);
+        }
+
+        return operands;
+    }
+
+    /**
+     * Combines the referenced {@param operands} by a balanced tree of
+     * conjunctions or disjunctions and releases them.
+     *
+     * @return the referenced result.
+     */
+    private int combine(int[] operands, boolean conjunction) {
+        if (operands.length == 0) {
+            return conjunction ? BDD.ONE : BDD.ZERO;
+        }
+
+        for (int length = operands.length; length > 1; length = (length + 1) / 2) {
+            for (int i = 0; i < length / 2; i++) {
+                int left = operands[2 * i];
+                int right = operands[2 * i + 1];
+                operands[i] = factory.ref(conjunction ? factory.and(left, right) : factory.or(left, right));
+                factory.deref(left);
+                factory.deref(right);
+            }
+
+            if (length % 2 == 1) {
+                operands[length / 2] = operands[length - 1];
+            }
+        }
+
+        return operands[0];
+    }
+
+    private BDDValuationSet fromReferenced(int bdd) {
+        BDDValuationSet valuationSet = new BDDValuationSet(bdd);
+        factory.deref(bdd);
+        return valuationSet;
     }
 
     @Override
@@ -73,77 +279,898 @@ public class BDDValuationSetFactory implements ValuationSetFactory {
         return vars.length;
     }
 
-    private static final BooleanExpression<AtomLabel> TRUE = new BooleanExpression<>(true);
-    private static final BooleanExpression<AtomLabel> FALSE = new BooleanExpression<>(false);
+    /**
+     * Enables or disables leak tracking. While enabled, the factory records
+     * where each valuation set not freed yet was created, which is reported by
+     * {@link BDDValuationSetFactory#getLeaks()}. This is meant for debugging,
+     * since it keeps a stack trace per valuation set.
+     */
+    public synchronized void setLeakTracking(boolean enabled) {
+        liveSets = enabled ? new IdentityHashMap<>() : null;
+    }
+
+    /**
+     * @return the creation stack traces of the valuation sets created since
+     *         leak tracking was enabled and not freed yet.
+     */
+    public synchronized List<Throwable> getLeaks() {
+        return liveSets == null ? Collections.emptyList() : new ArrayList<>(liveSets.values());
+    }
+
+    /**
+     * The nodes of the BDD are written bottom-up as triples (atomic
+     * proposition, low, high), where children refer to {@link BDD#ZERO} (0),
+     * {@link BDD#ONE} (1) or to the i-th node written before (i + 2).
+     */
+    @Override
+    public void write(ValuationSet valuationSet, DataOutput output) throws IOException {
+        output.writeInt(writeNodes(new int[] { index(valuationSet) }, output)[0]);
+    }
+
+    @Override
+    public BDDValuationSet read(DataInput input) throws IOException {
+        int[] nodes = readNodes(input);
+
+        try {
+            return new BDDValuationSet(nodes[readId(input, nodes.length)]);
+        } finally {
+            releaseNodes(nodes);
+        }
+    }
+
+    /**
+     * The nodes shared by the sets are written once, followed by the number of
+     * sets and their roots, see
+     * {@link BDDValuationSetFactory#write(ValuationSet, DataOutput)}.
+     */
+    @Override
+    public void writeAll(Collection<? extends ValuationSet> valuationSets, DataOutput output) throws IOException {
+        int[] roots = new int[valuationSets.size()];
+        int i = 0;
+
+        for (ValuationSet valuationSet : valuationSets) {
+            roots[i++] = index(valuationSet);
+        }
+
+        int[] ids = writeNodes(roots, output);
+        output.writeInt(ids.length);
+
+        for (int id : ids) {
+            output.writeInt(id);
+        }
+    }
+
+    @Override
+    public List<ValuationSet> readAll(DataInput input) throws IOException {
+        int[] nodes = readNodes(input);
+        int[] roots;
+
+        try {
+            int count = input.readInt();
+
+            if (count < 0) {
+                throw new IOException("Invalid number of valuation sets: " + count);
+            }
+
+            // The roots are read first, such that no set is created from a
+            // corrupted stream.
+            roots = new int[Math.min(count, 1024)];
+
+            for (int i = 0; i < count; i++) {
+                if (i == roots.length) {
+                    roots = Arrays.copyOf(roots, (int) Math.min((long) roots.length * 2, count));
+                }
+
+                roots[i] = nodes[readId(input, nodes.length)];
+            }
+        } catch (IOException ex) {
+            releaseNodes(nodes);
+            throw ex;
+        }
+
+        List<ValuationSet> valuationSets = new ArrayList<>(roots.length);
+
+        for (int root : roots) {
+            valuationSets.add(new BDDValuationSet(root));
+        }
+
+        releaseNodes(nodes);
+        return valuationSets;
+    }
+
+    /**
+     * Writes the nodes reachable from {@param roots}.
+     *
+     * @return the ids of the roots in the written nodes.
+     */
+    private int[] writeNodes(int[] roots, DataOutput output) throws IOException {
+        List<Integer> nodes = new ArrayList<>();
+        Map<Integer, Integer> ids = new HashMap<>();
+        ids.put(BDD.ZERO, 0);
+        ids.put(BDD.ONE, 1);
+
+        for (int root : roots) {
+            collectNodes(root, nodes, ids);
+        }
+
+        output.writeInt(nodes.size());
+
+        for (int node : nodes) {
+            output.writeInt(propositions[factory.getVar(node)]);
+            output.writeInt(ids.get(factory.getLow(node)));
+            output.writeInt(ids.get(factory.getHigh(node)));
+        }
 
+        return Arrays.stream(roots).map(ids::get).toArray();
+    }
+
+    private void collectNodes(int bdd, List<Integer> nodes, Map<Integer, Integer> ids) {
+        if (ids.containsKey(bdd)) {
+            return;
+        }
+
+        collectNodes(factory.getLow(bdd), nodes, ids);
+        collectNodes(factory.getHigh(bdd), nodes, ids);
+        ids.put(bdd, nodes.size() + 2);
+        nodes.add(bdd);
+    }
+
+    /**
+     * Reads the nodes written by {@link BDDValuationSetFactory#writeNodes}.
+     * The stream is validated: a negative node count, a proposition outside of
+     * the alphabet or a child that does not refer to a node read before is
+     * rejected with an {@link IOException}, and the nodes read so far are
+     * released.
+     *
+     * @return the referenced nodes, indexed by their ids.
+     */
+    private int[] readNodes(DataInput input) throws IOException {
+        int count = input.readInt();
+
+        if (count < 0 || count > Integer.MAX_VALUE - 2) {
+            throw new IOException("Invalid number of BDD nodes: " + count);
+        }
+
+        // The array grows while reading, such that a corrupted count does
+        // not allocate memory in advance.
+        int[] nodes = new int[Math.min(count, 1024) + 2];
+        nodes[0] = BDD.ZERO;
+        nodes[1] = BDD.ONE;
+        int i = 2;
+
+        try {
+            for (; i < count + 2; i++) {
+                int variable = input.readInt();
+
+                if (variable < 0 || variable >= vars.length) {
+                    throw new IOException("Invalid atomic proposition " + variable + " of BDD node " + i);
+                }
+
+                int low = nodes[readId(input, i)];
+                int high = nodes[readId(input, i)];
+
+                if (i == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, (int) Math.min((long) nodes.length * 2, (long) count + 2));
+                }
+
+                nodes[i] = factory.ref(factory.ite(vars[variable], high, low));
+            }
+        } catch (IOException ex) {
+            releaseNodes(Arrays.copyOf(nodes, i));
+            throw ex;
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Reads the id of a node and checks that it is smaller than
+     * {@param bound}.
+     */
+    private static int readId(DataInput input, int bound) throws IOException {
+        int id = input.readInt();
+
+        if (id < 0 || id >= bound) {
+            throw new IOException("Invalid BDD node id " + id + ", expected a value below " + bound);
+        }
+
+        return id;
+    }
+
+    private void releaseNodes(int[] nodes) {
+        for (int i = 2; i < nodes.length; i++) {
+            factory.deref(nodes[i]);
+        }
+    }
+
+    /**
+     * Copies a BDD of another {@link BDDValuationSetFactory} node by node;
+     * other valuation sets are copied cube by cube.
+     */
+    @Override
+    public ValuationSet transfer(ValuationSet valuationSet, @Nullable int[] renaming) {
+        if (!(valuationSet instanceof BDDValuationSet)) {
+            return ValuationSetFactory.super.transfer(valuationSet, renaming);
+        }
+
+        BDDValuationSet source = (BDDValuationSet) valuationSet;
+        BDDValuationSetFactory sourceFactory = source.getOwner();
+
+        if (sourceFactory == this && renaming == null) {
+            return source.copy();
+        }
+
+        Map<Integer, Integer> transferred = new HashMap<>();
+        BDDValuationSet result = new BDDValuationSet(transfer(source.index, sourceFactory, renaming, transferred));
+        transferred.values().forEach(factory::deref);
+        return result;
+    }
+
+    private int transfer(int bdd, BDDValuationSetFactory source, @Nullable int[] renaming, Map<Integer, Integer> transferred) {
+        if (bdd == BDD.ZERO || bdd == BDD.ONE) {
+            return bdd;
+        }
+
+        Integer result = transferred.get(bdd);
+
+        if (result == null) {
+            int proposition = source.propositions[source.factory.getVar(bdd)];
+            int target = renaming == null ? proposition : renaming[proposition];
+
+            if (target < 0 || target >= vars.length) {
+                throw new IllegalArgumentException("Atomic proposition " + proposition + " is renamed to " + target + ", which is not in the alphabet.");
+            }
+
+            int low = transfer(source.factory.getLow(bdd), source, renaming, transferred);
+            int high = transfer(source.factory.getHigh(bdd), source, renaming, transferred);
+            result = factory.ref(factory.ite(vars[target], high, low));
+            transferred.put(bdd, result);
+        }
+
+        return result;
+    }
+
+    private static int index(ValuationSet valuationSet) {
+        if (!(valuationSet instanceof BDDValuationSet)) {
+            throw new UnsupportedOperationException();
+        }
+
+        return ((BDDValuationSet) valuationSet).index;
+    }
+
+    /**
+     * Decides whether {@param left} implies {@param right} by a walk over both
+     * BDDs that stops at the first counterexample. No nodes are created.
+     */
+    boolean implies(int left, int right) {
+        nextEpoch();
+        return implies0(left, right);
+    }
+
+    /**
+     * Decides whether {@param left} and {@param right} are disjoint by a walk
+     * over both BDDs that stops at the first common valuation. No nodes are
+     * created.
+     */
+    boolean disjoint(int left, int right) {
+        nextEpoch();
+        return disjoint0(left, right);
+    }
+
+    private void nextEpoch() {
+        epoch++;
+
+        if (epoch == 0) {
+            Arrays.fill(cacheEpoch, 0);
+            epoch = 1;
+        }
+    }
+
+    private boolean implies0(int left, int right) {
+        if (left == BDD.ZERO || right == BDD.ONE || left == right) {
+            return true;
+        }
+
+        if (left == BDD.ONE || right == BDD.ZERO) {
+            return false;
+        }
+
+        int slot = cacheSlot(IMPLIES, left, right);
+
+        if (cacheEpoch[slot] == epoch && cacheLeft[slot] == left && cacheRight[slot] == right) {
+            return cacheResult[slot];
+        }
+
+        int variable = Math.min(factory.getVar(left), factory.getVar(right));
+        boolean result = implies0(lowCofactor(left, variable), lowCofactor(right, variable)) && implies0(highCofactor(left, variable), highCofactor(right, variable));
+        store(slot, left, right, result);
+        return result;
+    }
+
+    private boolean disjoint0(int left, int right) {
+        if (left == BDD.ZERO || right == BDD.ZERO) {
+            return true;
+        }
+
+        if (left == BDD.ONE || right == BDD.ONE || left == right) {
+            return false;
+        }
+
+        // Disjointness is symmetric.
+        if (left > right) {
+            return disjoint0(right, left);
+        }
+
+        int slot = cacheSlot(DISJOINT, left, right);
+
+        if (cacheEpoch[slot] == epoch && cacheLeft[slot] == left && cacheRight[slot] == -right - 1) {
+            return cacheResult[slot];
+        }
+
+        int variable = Math.min(factory.getVar(left), factory.getVar(right));
+        boolean result = disjoint0(lowCofactor(left, variable), lowCofactor(right, variable)) && disjoint0(highCofactor(left, variable), highCofactor(right, variable));
+        // Negative right keys keep the entries of both walks apart.
+        store(slot, left, -right - 1, result);
+        return result;
+    }
+
+    private int lowCofactor(int bdd, int variable) {
+        return factory.getVar(bdd) == variable ? factory.getLow(bdd) : bdd;
+    }
+
+    private int highCofactor(int bdd, int variable) {
+        return factory.getVar(bdd) == variable ? factory.getHigh(bdd) : bdd;
+    }
+
+    private static int cacheSlot(int operation, int left, int right) {
+        int hash = (left * 31 + right) * 31 + operation;
+        return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    private void store(int slot, int left, int right, boolean result) {
+        cacheLeft[slot] = left;
+        cacheRight[slot] = right;
+        cacheEpoch[slot] = epoch;
+        cacheResult[slot] = result;
+    }
+
+    /**
+     * Computes an irredundant sum of products for {@param bdd} with the
+     * algorithm of Minato and Morreale. The result is cached for the last
+     * {@link BDDValuationSetFactory#COVER_CACHE_SIZE} pairs of nodes and alias
+     * maps that were rendered; the cache holds a reference on its nodes, so
+     * their ids are not reused while they are cached.
+     */
     BooleanExpression<AtomLabel> createRepresentative(int bdd, @Nullable BiMap<String, Integer> literalNames) {
-        if (bdd == BDD.ONE) {
-            return TRUE;
+        CoverKey key = new CoverKey(bdd, literalNames);
+        BooleanExpression<AtomLabel> expression = covers.get(key);
+
+        if (expression == null) {
+            Map<Long, Tuple<List<Tuple<BitSet, BitSet>>, Integer>> computed = new HashMap<>();
+            expression = SumOfProducts.toExpression(isop(bdd, bdd, computed).left, literalNames);
+            computed.forEach((nodes, cover) -> {
+                factory.deref((int) (nodes >>> 32));
+                factory.deref((int) (long) nodes);
+                factory.deref(cover.right);
+            });
+            covers.put(key, expression);
+            factory.ref(bdd);
         }
 
-        if (bdd == BDD.ZERO) {
-            return FALSE;
+        return expression;
+    }
+
+    /**
+     * @return an irredundant cover of some function between {@param lower} and
+     *         {@param upper} together with its BDD. The BDDs of all computed
+     *         covers and the pairs of nodes they are keyed by are referenced
+     *         once by {@param computed}, such that the ids of intermediate
+     *         operands are not reused for other functions while the keys are
+     *         in use.
+     */
+    private Tuple<List<Tuple<BitSet, BitSet>>, Integer> isop(int lower, int upper, Map<Long, Tuple<List<Tuple<BitSet, BitSet>>, Integer>> computed) {
+        if (lower == BDD.ZERO) {
+            return new Tuple<>(SumOfProducts.EMPTY, BDD.ZERO);
         }
 
-        BooleanExpression<AtomLabel> letter;
-        if (literalNames == null) {
-            letter = new BooleanExpression<>(AtomLabel.createAPIndex(factory.getVar(bdd)));
-        } else {
-            letter = new BooleanExpression<>(AtomLabel.createAlias(literalNames.inverse().get(factory.getVar(bdd))));
+        if (upper == BDD.ONE) {
+            return new Tuple<>(SumOfProducts.TAUTOLOGY, BDD.ONE);
         }
-        BooleanExpression<AtomLabel> pos = createRepresentative(factory.getHigh(bdd), literalNames);
-        BooleanExpression<AtomLabel> neg = createRepresentative(factory.getLow(bdd), literalNames);
 
-        if (pos.isTRUE()) {
-            pos = letter;
-        } else if (!pos.isFALSE()) {
-            pos = pos.and(letter);
+        long key = ((long) lower << 32) | (upper & 0xFFFFFFFFL);
+        Tuple<List<Tuple<BitSet, BitSet>>, Integer> cover = computed.get(key);
+
+        if (cover != null) {
+            return cover;
         }
 
-        if (neg.isTRUE()) {
-            neg = letter.not();
-        } else if (!neg.isFALSE()) {
-            neg = neg.and(letter.not());
+        // Both nodes are inner nodes: lower is not ZERO and implies upper.
+        int variable = Math.min(factory.getVar(lower), factory.getVar(upper));
+        int lower0 = lowCofactor(lower, variable);
+        int lower1 = highCofactor(lower, variable);
+        int upper0 = lowCofactor(upper, variable);
+        int upper1 = highCofactor(upper, variable);
+
+        int onlyLower0 = andNot(lower0, upper1);
+        Tuple<List<Tuple<BitSet, BitSet>>, Integer> negative = isop(onlyLower0, upper0, computed);
+        factory.deref(onlyLower0);
+
+        int onlyLower1 = andNot(lower1, upper0);
+        Tuple<List<Tuple<BitSet, BitSet>>, Integer> positive = isop(onlyLower1, upper1, computed);
+        factory.deref(onlyLower1);
+
+        int remaining0 = andNot(lower0, negative.right);
+        int remaining1 = andNot(lower1, positive.right);
+        int remaining = factory.ref(factory.or(remaining0, remaining1));
+        factory.deref(remaining0);
+        factory.deref(remaining1);
+        int both = factory.ref(factory.and(upper0, upper1));
+        Tuple<List<Tuple<BitSet, BitSet>>, Integer> independent = isop(remaining, both, computed);
+        factory.deref(remaining);
+        factory.deref(both);
+
+        int branches = factory.ref(factory.ite(vars[propositions[variable]], positive.right, negative.right));
+        int bdd = factory.ref(factory.or(branches, independent.right));
+        factory.deref(branches);
+
+        cover = new Tuple<>(SumOfProducts.combine(propositions[variable], negative.left, positive.left, independent.left), bdd);
+        computed.put(key, cover);
+        factory.ref(lower);
+        factory.ref(upper);
+        return cover;
+    }
+
+    /**
+     * @return the referenced BDD of {@param left} and not {@param right}.
+     */
+    private int andNot(int left, int right) {
+        int complement = factory.ref(factory.not(right));
+        int result = factory.ref(factory.and(left, complement));
+        factory.deref(complement);
+        return result;
+    }
+
+    private static final class CoverKey {
+        final int bdd;
+        @Nullable
+        final BiMap<String, Integer> literalNames;
+
+        CoverKey(int bdd, @Nullable BiMap<String, Integer> literalNames) {
+            this.bdd = bdd;
+            this.literalNames = literalNames;
         }
 
-        if (pos.isFALSE()) {
-            return neg;
-        } else if (neg.isFALSE()) {
-            return pos;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            CoverKey that = (CoverKey) o;
+            // Alias maps are compared by identity, as they are mutable.
+            return bdd == that.bdd && literalNames == that.literalNames;
         }
 
-        return pos.or(neg);
+        @Override
+        public int hashCode() {
+            return 31 * bdd + System.identityHashCode(literalNames);
+        }
     }
 
-    int createBDD(BitSet set, PrimitiveIterator.OfInt base) {
-        int bdd = BDD.ONE;
+    /**
+     * Builds the cube of {@param set} restricted to {@param restrictedAlphabet}
+     * bottom-up, such that each literal adds exactly one node. Cubes are
+     * cached, the cache holds a reference on its nodes.
+     *
+     * @return the cube. The only reference on it is held by the cache, which
+     *         may release it on the next call; callers keeping the cube have
+     *         to reference it and must not dereference it otherwise.
+     */
+    int createBDD(BitSet set, BitSet restrictedAlphabet) {
+        BitSet alphabet = restrictedAlphabet.get(0, vars.length);
+        BitSet valuation = set.get(0, vars.length);
+        valuation.and(alphabet);
 
-        while (base.hasNext()) {
+        Tuple<BitSet, BitSet> key = new Tuple<>(valuation, alphabet);
+        Integer cached = cubes.get(key);
 
-            int i = base.nextInt();
+        if (cached != null) {
+            return cached;
+        }
 
-            if (set.get(i)) {
-                bdd = factory.and(vars[i], bdd);
-            } else {
-                bdd = factory.and(factory.not(vars[i]), bdd);
+        int bdd = BDD.ONE;
+
+        for (int level = vars.length - 1; level >= 0; level--) {
+            int proposition = propositions[level];
+
+            if (alphabet.get(proposition)) {
+                int variable = vars[proposition];
+                int next = factory.ref(valuation.get(proposition) ? factory.ite(variable, bdd, BDD.ZERO) : factory.ite(variable, BDD.ZERO, bdd));
+                factory.deref(bdd);
+                bdd = next;
             }
         }
 
+        // The reference of the last step is handed to the cache.
+        cubes.put(key, bdd);
         return bdd;
     }
 
     int createBDD(BitSet set) {
-        return createBDD(set, IntStream.range(0, vars.length).iterator());
+        BitSet alphabet = new BitSet();
+        alphabet.set(0, vars.length);
+        return createBDD(set, alphabet);
+    }
+
+    /**
+     * @return the atomic propositions in the order of their variables in the
+     *         BDD, from the root to the leaves.
+     */
+    public int[] getOrder() {
+        return propositions.clone();
+    }
+
+    /**
+     * @return the number of inner nodes shared by the live valuation sets.
+     * @throws IllegalStateException
+     *             if reordering is not enabled.
+     */
+    public int getNodeCount() {
+        return countNodes(factory, getRoots());
+    }
+
+    /**
+     * Rebuilds all live valuation sets with the variable order {@param order},
+     * which lists the atomic propositions from the root to the leaves. The
+     * valuation sets stay valid, but cubes and labels are enumerated in the new
+     * order afterwards. Valuation sets must not be used concurrently.
+     *
+     * @throws IllegalStateException
+     *             if reordering is not enabled.
+     * @throws IllegalArgumentException
+     *             if {@param order} is not a permutation of the atomic
+     *             propositions.
+     */
+    public ReorderingStatistics reorder(int[] order) {
+        int[] roots = getRoots();
+        BitSet seen = new BitSet();
+
+        for (int proposition : order) {
+            if (proposition < 0 || proposition >= vars.length || seen.get(proposition)) {
+                throw new IllegalArgumentException("Not a permutation of the atomic propositions: " + Arrays.toString(order));
+            }
+
+            seen.set(proposition);
+        }
+
+        if (order.length != vars.length) {
+            throw new IllegalArgumentException("Not a permutation of the atomic propositions: " + Arrays.toString(order));
+        }
+
+        int before = countNodes(factory, roots);
+        rebuild(order);
+        return new ReorderingStatistics(before, countNodes(factory, getRoots()), 1);
+    }
+
+    /**
+     * Searches a smaller variable order in the style of sifting: each atomic
+     * proposition in turn is tried at every level, while the others keep their
+     * relative order, and is left at the level with the fewest nodes. Since
+     * jdd cannot swap adjacent levels in place, each candidate order is
+     * evaluated by building all live valuation sets in a scratch BDD: a run
+     * takes n * (n - 1) such rebuilds for n atomic propositions, each linear in
+     * the number of nodes. The search is never triggered automatically; call
+     * it between phases that create many sets. Valuation sets must not be
+     * used concurrently.
+     *
+     * @throws IllegalStateException
+     *             if reordering is not enabled.
+     */
+    public ReorderingStatistics searchOrder() {
+        int[] roots = getRoots();
+        int before = countNodes(factory, roots);
+        int[] best = propositions.clone();
+        int bestCount = before;
+        int candidates = 0;
+
+        for (int proposition : propositions.clone()) {
+            int[] current = best;
+
+            for (int level = 0; level < vars.length; level++) {
+                int[] candidate = move(current, proposition, level);
+
+                if (Arrays.equals(candidate, current)) {
+                    continue;
+                }
+
+                BDD scratch = createBDD();
+                int count = countNodes(scratch, translate(roots, scratch, createVars(scratch, candidate)));
+                scratch.cleanup();
+                candidates++;
+
+                if (count < bestCount) {
+                    best = candidate;
+                    bestCount = count;
+                }
+            }
+        }
+
+        if (!Arrays.equals(best, propositions)) {
+            rebuild(best);
+        }
+
+        return new ReorderingStatistics(before, countNodes(factory, getRoots()), candidates);
+    }
+
+    /**
+     * @return a pseudo-random point for {@param proposition}, see
+     *         {@link BDDValuationSet#hashCode()}.
+     */
+    private static long hashPoint(int proposition) {
+        long z = (proposition + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private int[] getRoots() {
+        if (registry == null) {
+            throw new IllegalStateException("Reordering is not enabled for this factory.");
+        }
+
+        return registry.stream().mapToInt(valuationSet -> valuationSet.index).filter(index -> index != BDDValuationSet.INVALID_BDD).toArray();
+    }
+
+    private static int[] move(int[] order, int proposition, int level) {
+        int[] moved = new int[order.length];
+
+        for (int i = 0, j = 0; i < order.length; i++) {
+            if (order[i] != proposition) {
+                if (j == level) {
+                    j++;
+                }
+
+                moved[j++] = order[i];
+            }
+        }
+
+        moved[level] = proposition;
+        return moved;
+    }
+
+    /**
+     * @return the variable of each atomic proposition, created in {@param bdd}
+     *         in the order {@param order}.
+     */
+    private static int[] createVars(BDD bdd, int[] order) {
+        int[] variables = new int[order.length];
+
+        for (int proposition : order) {
+            variables[proposition] = bdd.createVar();
+        }
+
+        return variables;
+    }
+
+    /**
+     * Builds {@param roots} in {@param target}, whose variables are given per
+     * atomic proposition by {@param variables}.
+     *
+     * @return the unreferenced roots in {@param target}.
+     */
+    private int[] translate(int[] roots, BDD target, int[] variables) {
+        Map<Integer, Integer> translated = new HashMap<>();
+        int[] result = new int[roots.length];
+
+        for (int i = 0; i < roots.length; i++) {
+            result[i] = translate(roots[i], target, variables, translated);
+        }
+
+        translated.values().forEach(target::deref);
+        return result;
+    }
+
+    private int translate(int bdd, BDD target, int[] variables, Map<Integer, Integer> translated) {
+        if (bdd == BDD.ZERO || bdd == BDD.ONE) {
+            return bdd;
+        }
+
+        Integer result = translated.get(bdd);
+
+        if (result == null) {
+            int low = translate(factory.getLow(bdd), target, variables, translated);
+            int high = translate(factory.getHigh(bdd), target, variables, translated);
+            result = target.ref(target.ite(variables[propositions[factory.getVar(bdd)]], high, low));
+            translated.put(bdd, result);
+        }
+
+        return result;
+    }
+
+    private void rebuild(int[] order) {
+        BDD target = createBDD();
+        int[] variables = createVars(target, order);
+        Map<Integer, Integer> translated = new HashMap<>();
+
+        for (BDDValuationSet valuationSet : registry) {
+            if (valuationSet.index != BDDValuationSet.INVALID_BDD) {
+                int index = valuationSet.index;
+                valuationSet.index = target.ref(translate(index, target, variables, translated));
+
+                // The hash of the function does not depend on the order.
+                valuationSet.hashedIndex = valuationSet.hashedIndex == index ? valuationSet.index : BDDValuationSet.INVALID_BDD;
+            }
+        }
+
+        translated.values().forEach(target::deref);
+
+        // The cached covers, cubes and model counts refer to nodes of the old
+        // BDD.
+        covers.clear();
+        cubes.clear();
+        modelCounts.clear();
+        factory.cleanup();
+        factory = target;
+        System.arraycopy(variables, 0, vars, 0, vars.length);
+        System.arraycopy(order, 0, propositions, 0, propositions.length);
+    }
+
+    private static int countNodes(BDD bdd, int[] roots) {
+        Set<Integer> visited = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+
+        for (int root : roots) {
+            stack.push(root);
+        }
+
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+
+            if (node != BDD.ZERO && node != BDD.ONE && visited.add(node)) {
+                stack.push(bdd.getLow(node));
+                stack.push(bdd.getHigh(node));
+            }
+        }
+
+        return visited.size();
+    }
+
+    /**
+     * The number of inner nodes shared by the live valuation sets before and
+     * after a reordering.
+     */
+    public static final class ReorderingStatistics {
+        private final int nodesBefore;
+        private final int nodesAfter;
+        private final int candidates;
+
+        ReorderingStatistics(int nodesBefore, int nodesAfter, int candidates) {
+            this.nodesBefore = nodesBefore;
+            this.nodesAfter = nodesAfter;
+            this.candidates = candidates;
+        }
+
+        public int getNodesBefore() {
+            return nodesBefore;
+        }
+
+        public int getNodesAfter() {
+            return nodesAfter;
+        }
+
+        /**
+         * @return the number of variable orders that were evaluated.
+         */
+        public int getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * @return the fraction of nodes saved by the reordering.
+         */
+        public double getReduction() {
+            return nodesBefore == 0 ? 0.0 : 1.0 - (double) nodesAfter / nodesBefore;
+        }
+
+        @Override
+        public String toString() {
+            return "nodes: " + nodesBefore + " -> " + nodesAfter + ", candidates: " + candidates;
+        }
+    }
+
+    private synchronized void track(BDDValuationSet valuationSet) {
+        if (liveSets != null) {
+            liveSets.put(valuationSet, new Throwable("Valuation set created, but not freed"));
+        }
+    }
+
+    private synchronized void untrack(BDDValuationSet valuationSet) {
+        if (liveSets != null) {
+            liveSets.remove(valuationSet);
+        }
+    }
+
+    private static final BigInteger MAX_INT = BigInteger.valueOf(Integer.MAX_VALUE);
+
+    /**
+     * Enumerates the paths to {@link BDD#ONE} depth-first, low branches first.
+     */
+    private final class CubeIterator implements Iterator<Tuple<BitSet, BitSet>> {
+
+        private final Deque<Tuple<Integer, Tuple<BitSet, BitSet>>> stack = new ArrayDeque<>();
+        @Nullable
+        private Tuple<BitSet, BitSet> next;
+
+        CubeIterator(int root) {
+            stack.push(new Tuple<>(root, new Tuple<>(new BitSet(), new BitSet())));
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+
+            while (next == null && !stack.isEmpty()) {
+                Tuple<Integer, Tuple<BitSet, BitSet>> frame = stack.pop();
+                int bdd = frame.left;
+                BitSet values = frame.right.left;
+                BitSet care = frame.right.right;
+
+                while (bdd != BDD.ZERO && bdd != BDD.ONE) {
+                    int proposition = propositions[factory.getVar(bdd)];
+                    care.set(proposition);
+
+                    BitSet highValues = (BitSet) values.clone();
+                    highValues.set(proposition);
+                    stack.push(new Tuple<>(factory.getHigh(bdd), new Tuple<>(highValues, (BitSet) care.clone())));
+
+                    bdd = factory.getLow(bdd);
+                }
+
+                if (bdd == BDD.ONE) {
+                    next = new Tuple<>(values, care);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Tuple<BitSet, BitSet> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Tuple<BitSet, BitSet> cube = next;
+            advance();
+            return cube;
+        }
     }
 
     public class BDDValuationSet implements ValuationSet {
 
         private static final int INVALID_BDD = -1;
         private int index;
+        @Nullable
+        private ValuationSetScope scope;
+        // The hash code of the function, valid while index is hashedIndex.
+        private int hash;
+        private int hashedIndex = INVALID_BDD;
 
         BDDValuationSet(int index) {
             this.index = index;
             factory.ref(index);
+            scope = ValuationSetScope.register(this);
+
+            if (registry != null) {
+                registry.add(this);
+            }
+
+            if (liveSets != null) {
+                track(this);
+            }
         }
 
         @Override
@@ -151,6 +1178,19 @@ public class BDDValuationSetFactory implements ValuationSetFactory {
             return createRepresentative(index, literalNames);
         }
 
+        @Nullable
+        ValuationSetScope getScope() {
+            return scope;
+        }
+
+        void setScope(@Nullable ValuationSetScope scope) {
+            this.scope = scope;
+        }
+
+        BDDValuationSetFactory getOwner() {
+            return BDDValuationSetFactory.this;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o)
@@ -161,9 +1201,42 @@ public class BDDValuationSetFactory implements ValuationSetFactory {
             return index == bitSets.index;
         }
 
+        /**
+         * Without reordering, the hash code is derived from the node. Otherwise
+         * it is the value of the multilinear extension of the function at a
+         * fixed point, which does not depend on the variable order, so sets
+         * stay valid keys of hashed containers across reorderings.
+         */
         @Override
         public int hashCode() {
-            return Objects.hash(index);
+            if (registry == null) {
+                return Objects.hash(index);
+            }
+
+            if (hashedIndex != index) {
+                hash = Long.hashCode(evaluate(index, new HashMap<>()));
+                hashedIndex = index;
+            }
+
+            return hash;
+        }
+
+        private long evaluate(int bdd, Map<Integer, Long> evaluated) {
+            if (bdd == BDD.ZERO || bdd == BDD.ONE) {
+                return bdd == BDD.ONE ? 1L : 0L;
+            }
+
+            Long value = evaluated.get(bdd);
+
+            if (value == null) {
+                // Variables skipped on a path contribute a factor of
+                // (1 - x) + x = 1, so gaps between levels need no care.
+                long point = hashPoint(propositions[factory.getVar(bdd)]);
+                value = (1 - point) * evaluate(factory.getLow(bdd), evaluated) + point * evaluate(factory.getHigh(bdd), evaluated);
+                evaluated.put(bdd, value);
+            }
+
+            return value;
         }
 
         @Override
@@ -172,12 +1245,68 @@ public class BDDValuationSetFactory implements ValuationSetFactory {
         }
 
         @Nonnull
+        @Override
         public Iterator<BitSet> iterator() {
-            return Collections3.powerSet(vars.length).stream().filter(this::contains).iterator();
+            return new Minterms(cubes(), vars.length);
         }
 
+        @Override
+        public Iterator<Tuple<BitSet, BitSet>> cubes() {
+            return new CubeIterator(index);
+        }
+
+        @Override
         public int size() {
-            return (int) Math.round(factory.satCount(index));
+            BigInteger models = countModels();
+            return models.compareTo(MAX_INT) > 0 ? Integer.MAX_VALUE : models.intValue();
+        }
+
+        @Override
+        public BigInteger countModels() {
+            if (index == BDD.ZERO) {
+                return BigInteger.ZERO;
+            }
+
+            int top = index == BDD.ONE ? vars.length : factory.getVar(index);
+            return countModels(index, new HashMap<>()).shiftLeft(top);
+        }
+
+        /**
+         * @return the number of assignments to the variables from the variable
+         *         of {@param bdd} on satisfying {@param bdd}. Counts are
+         *         looked up in {@param cache}, which holds the nodes of this
+         *         call, and in the model count cache of the factory.
+         */
+        private BigInteger countModels(int bdd, Map<Integer, BigInteger> cache) {
+            if (bdd == BDD.ZERO) {
+                return BigInteger.ZERO;
+            }
+
+            if (bdd == BDD.ONE) {
+                return BigInteger.ONE;
+            }
+
+            BigInteger count = cache.get(bdd);
+
+            if (count == null) {
+                count = modelCounts.get(bdd);
+
+                if (count == null) {
+                    int variable = factory.getVar(bdd);
+                    count = countChild(factory.getLow(bdd), variable, cache).add(countChild(factory.getHigh(bdd), variable, cache));
+                    modelCounts.put(bdd, count);
+                    factory.ref(bdd);
+                }
+
+                cache.put(bdd, count);
+            }
+
+            return count;
+        }
+
+        private BigInteger countChild(int child, int variable, Map<Integer, BigInteger> cache) {
+            int next = child == BDD.ZERO || child == BDD.ONE ? vars.length : factory.getVar(child);
+            return countModels(child, cache).shiftLeft(next - variable - 1);
         }
 
         @Override
@@ -242,35 +1371,77 @@ public class BDDValuationSetFactory implements ValuationSetFactory {
             return new BDDValuationSet(index);
         }
 
+        /**
+         * Releases the reference to the BDD. Freeing a set twice has no
+         * effect.
+         */
         @Override
         public void free() {
+            if (index == INVALID_BDD) {
+                return;
+            }
+
             factory.deref(index);
             index = INVALID_BDD;
+
+            if (scope != null) {
+                scope.unregister(this);
+                scope = null;
+            }
+
+            if (registry != null) {
+                registry.remove(this);
+            }
+
+            if (liveSets != null) {
+                untrack(this);
+            }
         }
 
         @Override
         public boolean contains(BitSet valuation) {
-            return factory.member(index, valuation);
-            /*
-             * boolean[] valu = new boolean[valuation.size()]; for (int i = 0; i
-             * < valuation.size(); i++) { valu[i] = valuation.get(i); } if
-             * (index > valu.length) { return false; } return
-             * factory.member(index, valu);
-             */
+            int bdd = index;
+
+            while (bdd != BDD.ZERO && bdd != BDD.ONE) {
+                bdd = valuation.get(propositions[factory.getVar(bdd)]) ? factory.getHigh(bdd) : factory.getLow(bdd);
+            }
+
+            return bdd == BDD.ONE;
         }
 
         @Override
         public boolean containsAll(ValuationSet other) {
             if (other instanceof BDDValuationSet) {
                 BDDValuationSet otherSet = (BDDValuationSet) other;
-                return factory.or(index, otherSet.index) == index;
+                return implies(otherSet.index, index);
             }
 
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public BitSet getSupport() {
+            BitSet support = new BitSet();
+            getSupport(index, support, new HashSet<>());
+            return support;
+        }
+
+        private void getSupport(int bdd, BitSet support, Set<Integer> visited) {
+            if (bdd == BDD.ONE || bdd == BDD.ZERO || !visited.add(bdd)) {
+                return;
+            }
+
+            support.set(propositions[factory.getVar(bdd)]);
+            getSupport(factory.getLow(bdd), support, visited);
+            getSupport(factory.getHigh(bdd), support, visited);
+        }
+
         public boolean intersects(ValuationSet other) {
-            return !intersect(other).isEmpty();
+            if (other instanceof BDDValuationSet) {
+                return !disjoint(index, ((BDDValuationSet) other).index);
+            }
+
+            throw new UnsupportedOperationException();
         }
 
         public ValuationSet intersect(ValuationSet other) {
@@ -279,18 +1450,9 @@ public class BDDValuationSetFactory implements ValuationSetFactory {
             return thisClone;
         }
 
-        @Override
-        protected void finalize() {
-            if (BDD.ONE < index) {
-                // System.out.println("Memory Leak. Call free() on
-                // BDDValuationSet.");
-                free();
-            }
-        }
-
         @Override
         public String toString() {
-            return Sets.newHashSet(iterator()).toString();
+            return toExpression().toString();
         }
     }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.collections.valuationset;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reduced decision diagrams compiled from disjoint valuation sets, which can
+ * be evaluated without the {@link ValuationSetFactory}. A diagram compiled
+ * from the sets s_0, ..., s_n-1 maps each valuation to the index of the set
+ * containing it or to {@link DecisionDiagram#NONE}. Nodes are shared between
+ * all diagrams compiled by the same instance.
+ * <p>
+ * Compiling is not thread-safe; evaluating is, once all diagrams are
+ * compiled.
+ */
+public final class DecisionDiagram {
+
+    public static final int NONE = -1;
+
+    private final ValuationSetFactory factory;
+
+    private int[] nodeVariable = new int[16];
+    private int[] nodeLow = new int[16];
+    private int[] nodeHigh = new int[16];
+    private int nodes;
+
+    // Open addressing unique table: each slot holds node + 1 or 0, if it is
+    // empty.
+    private int[] uniqueTable = new int[32];
+
+    public DecisionDiagram(ValuationSetFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Compiles a diagram over the atomic propositions the {@param sets}
+     * depend on. Variables are tested in ascending order and a variable is
+     * only tested if the cube assigned so far is not covered by a single set.
+     *
+     * @return the root of the diagram.
+     * @throws IllegalArgumentException
+     *             if two of the sets intersect.
+     */
+    public int compile(List<? extends ValuationSet> sets) {
+        BitSet support = new BitSet();
+        sets.forEach(set -> support.or(set.getSupport()));
+
+        int[] candidates = new int[sets.size()];
+        Arrays.setAll(candidates, i -> i);
+
+        return compile(sets, candidates, support.stream().toArray(), 0, new BitSet(), new BitSet());
+    }
+
+    private int compile(List<? extends ValuationSet> sets, int[] candidates, int[] variables, int depth, BitSet cube, BitSet assigned) {
+        ValuationSet cubeSet = factory.createValuationSet(cube, assigned);
+        int[] remaining = new int[candidates.length];
+        int size = 0;
+
+        try {
+            for (int candidate : candidates) {
+                if (sets.get(candidate).intersects(cubeSet)) {
+                    remaining[size++] = candidate;
+                }
+            }
+
+            if (size == 0) {
+                return leaf(NONE);
+            }
+
+            if (size == 1 && sets.get(remaining[0]).containsAll(cubeSet)) {
+                return leaf(remaining[0]);
+            }
+
+            if (depth == variables.length) {
+                throw new IllegalArgumentException("Sets " + remaining[0] + " and " + remaining[1] + " intersect.");
+            }
+        } finally {
+            cubeSet.free();
+        }
+
+        int variable = variables[depth];
+        remaining = Arrays.copyOf(remaining, size);
+
+        assigned.set(variable);
+        int low = compile(sets, remaining, variables, depth + 1, cube, assigned);
+        cube.set(variable);
+        int high = compile(sets, remaining, variables, depth + 1, cube, assigned);
+        cube.clear(variable);
+        assigned.clear(variable);
+
+        return low == high ? low : getNode(variable, low, high);
+    }
+
+    private static int leaf(int value) {
+        return -value - 2;
+    }
+
+    private int getNode(int variable, int low, int high) {
+        int mask = uniqueTable.length - 1;
+        int slot = hash(variable, low, high) & mask;
+
+        for (; uniqueTable[slot] != 0; slot = (slot + 1) & mask) {
+            int node = uniqueTable[slot] - 1;
+
+            if (nodeVariable[node] == variable && nodeLow[node] == low && nodeHigh[node] == high) {
+                return node;
+            }
+        }
+
+        if (nodes == nodeVariable.length) {
+            nodeVariable = Arrays.copyOf(nodeVariable, 2 * nodes);
+            nodeLow = Arrays.copyOf(nodeLow, 2 * nodes);
+            nodeHigh = Arrays.copyOf(nodeHigh, 2 * nodes);
+        }
+
+        nodeVariable[nodes] = variable;
+        nodeLow[nodes] = low;
+        nodeHigh[nodes] = high;
+        uniqueTable[slot] = nodes + 1;
+
+        if (2 * ++nodes > uniqueTable.length) {
+            rehash();
+        }
+
+        return nodes - 1;
+    }
+
+    private void rehash() {
+        uniqueTable = new int[2 * uniqueTable.length];
+        int mask = uniqueTable.length - 1;
+
+        for (int node = 0; node < nodes; node++) {
+            int slot = hash(nodeVariable[node], nodeLow[node], nodeHigh[node]) & mask;
+
+            while (uniqueTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            uniqueTable[slot] = node + 1;
+        }
+    }
+
+    private static int hash(int variable, int low, int high) {
+        int hash = (31 * (31 * variable + low) + high) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the index of the set containing {@param valuation} or
+     *         {@link DecisionDiagram#NONE}.
+     */
+    public int evaluate(int root, BitSet valuation) {
+        int node = root;
+
+        while (node >= 0) {
+            node = valuation.get(nodeVariable[node]) ? nodeHigh[node] : nodeLow[node];
+        }
+
+        return -node - 2;
+    }
+
+    /**
+     * @return the index of the set containing the valuation encoded by
+     *         {@param valuation}, where bit i is the value of atomic
+     *         proposition i, or {@link DecisionDiagram#NONE}.
+     */
+    public int evaluate(int root, long valuation) {
+        int node = root;
+
+        while (node >= 0) {
+            node = ((valuation >>> nodeVariable[node]) & 1L) == 0 ? nodeLow[node] : nodeHigh[node];
+        }
+
+        return -node - 2;
+    }
+
+    /**
+     * @return the number of inner nodes of all compiled diagrams.
+     */
+    public int size() {
+        return nodes;
+    }
+}
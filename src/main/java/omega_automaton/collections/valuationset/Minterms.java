@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.collections.valuationset;
+
+import java.util.BitSet;
+import java.util.Iterator;
+
+import omega_automaton.collections.Tuple;
+
+/**
+ * Lazily expands cubes over {@code size} atomic propositions into minterms.
+ */
+final class Minterms implements Iterator<BitSet> {
+
+    private final Iterator<Tuple<BitSet, BitSet>> cubes;
+    private final int size;
+
+    private BitSet values;
+    private int[] freeVariables;
+    // The assignment of the free variables to be returned next, as a binary
+    // counter; null if the current cube is exhausted.
+    private BitSet counter;
+
+    Minterms(Iterator<Tuple<BitSet, BitSet>> cubes, int size) {
+        this.cubes = cubes;
+        this.size = size;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return counter != null || cubes.hasNext();
+    }
+
+    @Override
+    public BitSet next() {
+        if (counter == null) {
+            Tuple<BitSet, BitSet> cube = cubes.next();
+            BitSet free = new BitSet();
+            free.set(0, size);
+            free.andNot(cube.right);
+            values = cube.left;
+            freeVariables = free.stream().toArray();
+            counter = new BitSet();
+        }
+
+        BitSet minterm = (BitSet) values.clone();
+
+        for (int i = counter.nextSetBit(0); i >= 0; i = counter.nextSetBit(i + 1)) {
+            minterm.set(freeVariables[i]);
+        }
+
+        // Increment the counter.
+        int carry = counter.nextClearBit(0);
+        counter.clear(0, carry);
+        counter.set(carry);
+
+        if (carry >= freeVariables.length) {
+            counter = null;
+        }
+
+        return minterm;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.collections.valuationset;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.BiMap;
+
+import jhoafparser.ast.AtomLabel;
+import jhoafparser.ast.BooleanExpression;
+import omega_automaton.collections.Tuple;
+
+/**
+ * Helpers for irredundant sums of products as computed by the algorithm of
+ * Minato and Morreale. A cover is a list of cubes (values, care), see
+ * {@link ValuationSet#cubes()}.
+ */
+final class SumOfProducts {
+
+    static final List<Tuple<BitSet, BitSet>> EMPTY = Collections.emptyList();
+    static final List<Tuple<BitSet, BitSet>> TAUTOLOGY = Collections.singletonList(new Tuple<>(new BitSet(), new BitSet()));
+
+    private static final BooleanExpression<AtomLabel> TRUE = new BooleanExpression<>(true);
+    private static final BooleanExpression<AtomLabel> FALSE = new BooleanExpression<>(false);
+
+    private SumOfProducts() {
+    }
+
+    /**
+     * Combines the covers of the recursion on {@param variable}: the cubes of
+     * {@param negative} get the literal !variable, the cubes of
+     * {@param positive} the literal variable, and the cubes of
+     * {@param independent} are taken as they are.
+     */
+    static List<Tuple<BitSet, BitSet>> combine(int variable, List<Tuple<BitSet, BitSet>> negative, List<Tuple<BitSet, BitSet>> positive,
+            List<Tuple<BitSet, BitSet>> independent) {
+        List<Tuple<BitSet, BitSet>> cover = new ArrayList<>(negative.size() + positive.size() + independent.size());
+        addWithLiteral(cover, negative, variable, false);
+        addWithLiteral(cover, positive, variable, true);
+        cover.addAll(independent);
+        return cover;
+    }
+
+    private static void addWithLiteral(List<Tuple<BitSet, BitSet>> cover, List<Tuple<BitSet, BitSet>> cubes, int variable, boolean value) {
+        for (Tuple<BitSet, BitSet> cube : cubes) {
+            BitSet values = (BitSet) cube.left.clone();
+            BitSet care = (BitSet) cube.right.clone();
+            values.set(variable, value);
+            care.set(variable);
+            cover.add(new Tuple<>(values, care));
+        }
+    }
+
+    /**
+     * @return the disjunction of the cubes of {@param cover}, where each cube is
+     *         the conjunction of its literals in the order of the atomic
+     *         propositions.
+     */
+    static BooleanExpression<AtomLabel> toExpression(List<Tuple<BitSet, BitSet>> cover, @Nullable BiMap<String, Integer> literalNames) {
+        BooleanExpression<AtomLabel> expression = null;
+
+        for (Tuple<BitSet, BitSet> cube : cover) {
+            BooleanExpression<AtomLabel> conjunction = null;
+
+            for (int i = cube.right.nextSetBit(0); i >= 0; i = cube.right.nextSetBit(i + 1)) {
+                BooleanExpression<AtomLabel> literal = cube.left.get(i) ? letter(i, literalNames) : letter(i, literalNames).not();
+                conjunction = conjunction == null ? literal : conjunction.and(literal);
+            }
+
+            if (conjunction == null) {
+                return TRUE;
+            }
+
+            expression = expression == null ? conjunction : expression.or(conjunction);
+        }
+
+        return expression == null ? FALSE : expression;
+    }
+
+    private static BooleanExpression<AtomLabel> letter(int variable, @Nullable BiMap<String, Integer> literalNames) {
+        if (literalNames == null) {
+            return new BooleanExpression<>(AtomLabel.createAPIndex(variable));
+        }
+
+        return new BooleanExpression<>(AtomLabel.createAlias(literalNames.inverse().get(variable)));
+    }
+}
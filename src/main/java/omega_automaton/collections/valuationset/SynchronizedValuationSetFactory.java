@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.collections.valuationset;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.BiMap;
+
+import jhoafparser.ast.AtomLabel;
+import jhoafparser.ast.BooleanExpression;
+import omega_automaton.collections.Tuple;
+
+/**
+ * A thread-safe view of a {@link ValuationSetFactory}. All operations of the
+ * factory and of its valuation sets are executed while holding the monitor of
+ * the wrapped factory, since the underlying BDD manager has a single unique
+ * table and cache that cannot be partitioned. Sets of the wrapped factory
+ * released by a {@link ValuationSetScope} are freed under the same monitor.
+ * Valuation sets of the wrapped factory must not be used directly while the
+ * view is shared between threads.
+ * <p>
+ * The single monitor serialises all label operations of all threads: the view
+ * makes a factory safe to share, but label work does not run concurrently.
+ * Parallel exploration only gains from the state-level work done outside of
+ * label operations.
+ */
+public class SynchronizedValuationSetFactory implements ValuationSetFactory {
+
+    private final ValuationSetFactory factory;
+
+    public SynchronizedValuationSetFactory(ValuationSetFactory factory) {
+        this.factory = factory;
+    }
+
+    public ValuationSetFactory getDelegate() {
+        return factory;
+    }
+
+    @Override
+    public ValuationSet createEmptyValuationSet() {
+        synchronized (factory) {
+            return wrap(factory.createEmptyValuationSet());
+        }
+    }
+
+    @Override
+    public ValuationSet createUniverseValuationSet() {
+        synchronized (factory) {
+            return wrap(factory.createUniverseValuationSet());
+        }
+    }
+
+    @Override
+    public ValuationSet createValuationSet(BitSet valuation) {
+        synchronized (factory) {
+            return wrap(factory.createValuationSet(valuation));
+        }
+    }
+
+    @Override
+    public ValuationSet createValuationSet(BitSet valuation, BitSet restrictedAlphabet) {
+        synchronized (factory) {
+            return wrap(factory.createValuationSet(valuation, restrictedAlphabet));
+        }
+    }
+
+    @Override
+    public ValuationSet createValuationSet(Collection<BitSet> valuations, BitSet restrictedAlphabet) {
+        synchronized (factory) {
+            return wrap(factory.createValuationSet(valuations, restrictedAlphabet));
+        }
+    }
+
+    @Override
+    public ValuationSet union(Collection<? extends ValuationSet> valuationSets) {
+        synchronized (factory) {
+            return wrap(factory.union(unwrapAll(valuationSets)));
+        }
+    }
+
+    @Override
+    public ValuationSet intersection(Collection<? extends ValuationSet> valuationSets) {
+        synchronized (factory) {
+            return wrap(factory.intersection(unwrapAll(valuationSets)));
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return factory.getSize();
+    }
+
+    @Override
+    public void write(ValuationSet valuationSet, DataOutput output) throws IOException {
+        synchronized (factory) {
+            factory.write(unwrap(valuationSet), output);
+        }
+    }
+
+    @Override
+    public ValuationSet read(DataInput input) throws IOException {
+        synchronized (factory) {
+            return wrap(factory.read(input));
+        }
+    }
+
+    @Override
+    public void writeAll(Collection<? extends ValuationSet> valuationSets, DataOutput output) throws IOException {
+        synchronized (factory) {
+            factory.writeAll(unwrapAll(valuationSets), output);
+        }
+    }
+
+    @Override
+    public List<ValuationSet> readAll(DataInput input) throws IOException {
+        synchronized (factory) {
+            List<ValuationSet> valuationSets = new ArrayList<>();
+            factory.readAll(input).forEach(valuationSet -> valuationSets.add(wrap(valuationSet)));
+            return valuationSets;
+        }
+    }
+
+    @Override
+    public ValuationSet transfer(ValuationSet valuationSet, @Nullable int[] renaming) {
+        synchronized (factory) {
+            return wrap(factory.transfer(unwrap(valuationSet), renaming));
+        }
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    private ValuationSet wrap(ValuationSet valuationSet) {
+        return new SynchronizedValuationSet(valuationSet);
+    }
+
+    static ValuationSet unwrap(ValuationSet valuationSet) {
+        return valuationSet instanceof SynchronizedValuationSet ? ((SynchronizedValuationSet) valuationSet).valuationSet : valuationSet;
+    }
+
+    private static List<ValuationSet> unwrapAll(Collection<? extends ValuationSet> valuationSets) {
+        List<ValuationSet> unwrapped = new ArrayList<>(valuationSets.size());
+        valuationSets.forEach(valuationSet -> unwrapped.add(unwrap(valuationSet)));
+        return unwrapped;
+    }
+
+    private final class SynchronizedValuationSet implements ValuationSet {
+
+        private final ValuationSet valuationSet;
+
+        SynchronizedValuationSet(ValuationSet valuationSet) {
+            this.valuationSet = valuationSet;
+        }
+
+        @Override
+        public ValuationSet complement() {
+            synchronized (factory) {
+                return wrap(valuationSet.complement());
+            }
+        }
+
+        @Override
+        public boolean isUniverse() {
+            synchronized (factory) {
+                return valuationSet.isUniverse();
+            }
+        }
+
+        @Override
+        public BooleanExpression<AtomLabel> toExpression(@Nullable BiMap<String, Integer> literalNames) {
+            synchronized (factory) {
+                return valuationSet.toExpression(literalNames);
+            }
+        }
+
+        @Override
+        public boolean contains(BitSet valuation) {
+            synchronized (factory) {
+                return valuationSet.contains(valuation);
+            }
+        }
+
+        @Override
+        public boolean containsAll(ValuationSet vs) {
+            synchronized (factory) {
+                return valuationSet.containsAll(unwrap(vs));
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            synchronized (factory) {
+                return valuationSet.isEmpty();
+            }
+        }
+
+        @Override
+        public void add(@Nonnull BitSet valuation) {
+            synchronized (factory) {
+                valuationSet.add(valuation);
+            }
+        }
+
+        @Override
+        public void addAll(@Nonnull ValuationSet newVs) {
+            synchronized (factory) {
+                valuationSet.addAll(unwrap(newVs));
+            }
+        }
+
+        @Override
+        public void addAllWith(@Nonnull ValuationSet other) {
+            synchronized (factory) {
+                valuationSet.addAllWith(unwrap(other));
+            }
+        }
+
+        @Override
+        public void removeAll(@Nonnull ValuationSet other) {
+            synchronized (factory) {
+                valuationSet.removeAll(unwrap(other));
+            }
+        }
+
+        @Override
+        public void retainAll(@Nonnull ValuationSet other) {
+            synchronized (factory) {
+                valuationSet.retainAll(unwrap(other));
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (factory) {
+                return valuationSet.size();
+            }
+        }
+
+        @Override
+        public BigInteger countModels() {
+            synchronized (factory) {
+                return valuationSet.countModels();
+            }
+        }
+
+        /**
+         * Iterates over a snapshot taken while holding the lock.
+         */
+        @Override
+        public Iterator<Tuple<BitSet, BitSet>> cubes() {
+            synchronized (factory) {
+                List<Tuple<BitSet, BitSet>> cubes = new ArrayList<>();
+                valuationSet.cubes().forEachRemaining(cubes::add);
+                return cubes.iterator();
+            }
+        }
+
+        @Override
+        public void free() {
+            synchronized (factory) {
+                valuationSet.free();
+            }
+        }
+
+        @Override
+        public ValuationSet copy() {
+            synchronized (factory) {
+                return wrap(valuationSet.copy());
+            }
+        }
+
+        @Override
+        public boolean intersects(ValuationSet value) {
+            synchronized (factory) {
+                return valuationSet.intersects(unwrap(value));
+            }
+        }
+
+        @Override
+        public BitSet getSupport() {
+            synchronized (factory) {
+                return valuationSet.getSupport();
+            }
+        }
+
+        @Override
+        public ValuationSet intersect(ValuationSet v2) {
+            synchronized (factory) {
+                return wrap(valuationSet.intersect(unwrap(v2)));
+            }
+        }
+
+        /**
+         * Expands a snapshot of {@link ValuationSet#cubes()} lazily, without
+         * holding the lock. Only the cubes are copied under the lock, not the
+         * (up to 2^|AP|) valuations.
+         */
+        @Override
+        public Iterator<BitSet> iterator() {
+            return new Minterms(cubes(), factory.getSize());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+
+            synchronized (factory) {
+                return valuationSet.equals(((SynchronizedValuationSet) o).valuationSet);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            synchronized (factory) {
+                return valuationSet.hashCode();
+            }
+        }
+
+        @Override
+        public String toString() {
+            synchronized (factory) {
+                return valuationSet.toString();
+            }
+        }
+    }
+}
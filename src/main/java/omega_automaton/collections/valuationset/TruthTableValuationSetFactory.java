@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.collections.valuationset;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.BiMap;
+
+import jhoafparser.ast.AtomLabel;
+import jhoafparser.ast.BooleanExpression;
+import omega_automaton.collections.Tuple;
+
+/**
+ * A {@link ValuationSetFactory} for at most six atomic propositions, which
+ * represents a valuation set by its truth table in a single {@code long}: bit
+ * {@code i} is set iff the valuation, whose j-th atomic proposition is bit
+ * {@code j} of {@code i}, is contained. All set operations are bitwise
+ * operations. Labels, iteration order and string representations are the
+ * same as the ones of a {@link BDDValuationSetFactory} with the default
+ * variable order.
+ */
+public class TruthTableValuationSetFactory implements ValuationSetFactory {
+
+    public static final int MAX_SIZE = 6;
+
+    /**
+     * Positions of the valuations in which the i-th atomic proposition is
+     * false.
+     */
+    private static final long[] NEGATIVE = { 0x5555555555555555L, 0x3333333333333333L, 0x0F0F0F0F0F0F0F0FL, 0x00FF00FF00FF00FFL, 0x0000FFFF0000FFFFL,
+            0x00000000FFFFFFFFL };
+
+    private final int size;
+    private final long universe;
+
+    public TruthTableValuationSetFactory(int alphabet) {
+        if (alphabet > MAX_SIZE) {
+            throw new IllegalArgumentException("Truth tables support at most " + MAX_SIZE + " atomic propositions.");
+        }
+
+        size = alphabet;
+        universe = alphabet == MAX_SIZE ? -1L : (1L << (1 << alphabet)) - 1;
+    }
+
+    @Override
+    public TruthTableValuationSet createEmptyValuationSet() {
+        return new TruthTableValuationSet(0L);
+    }
+
+    @Override
+    public TruthTableValuationSet createUniverseValuationSet() {
+        return new TruthTableValuationSet(universe);
+    }
+
+    @Override
+    public TruthTableValuationSet createValuationSet(BitSet valuation) {
+        return new TruthTableValuationSet(1L << index(valuation));
+    }
+
+    @Override
+    public TruthTableValuationSet createValuationSet(BitSet valuation, BitSet restrictedAlphabet) {
+        long table = universe;
+
+        for (int i = restrictedAlphabet.nextSetBit(0); i >= 0 && i < size; i = restrictedAlphabet.nextSetBit(i + 1)) {
+            table &= valuation.get(i) ? ~NEGATIVE[i] : NEGATIVE[i];
+        }
+
+        return new TruthTableValuationSet(table);
+    }
+
+    @Override
+    public TruthTableValuationSet union(Collection<? extends ValuationSet> valuationSets) {
+        long union = 0L;
+
+        for (ValuationSet valuationSet : valuationSets) {
+            union |= table(valuationSet);
+        }
+
+        return new TruthTableValuationSet(union);
+    }
+
+    @Override
+    public TruthTableValuationSet intersection(Collection<? extends ValuationSet> valuationSets) {
+        long intersection = universe;
+
+        for (ValuationSet valuationSet : valuationSets) {
+            intersection &= table(valuationSet);
+        }
+
+        return new TruthTableValuationSet(intersection);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public void write(ValuationSet valuationSet, DataOutput output) throws IOException {
+        output.writeLong(table(valuationSet));
+    }
+
+    @Override
+    public TruthTableValuationSet read(DataInput input) throws IOException {
+        return new TruthTableValuationSet(input.readLong() & universe);
+    }
+
+    private int index(BitSet valuation) {
+        long[] words = valuation.toLongArray();
+        return words.length == 0 ? 0 : (int) (words[0] & ((1 << size) - 1));
+    }
+
+    private static long table(ValuationSet valuationSet) {
+        if (valuationSet instanceof TruthTableValuationSet) {
+            return ((TruthTableValuationSet) valuationSet).table;
+        }
+
+        throw new UnsupportedOperationException();
+    }
+
+    private static long lowCofactor(long table, int variable) {
+        long low = table & NEGATIVE[variable];
+        return low | (low << (1 << variable));
+    }
+
+    private static long highCofactor(long table, int variable) {
+        long high = (table >>> (1 << variable)) & NEGATIVE[variable];
+        return high | (high << (1 << variable));
+    }
+
+    /**
+     * Computes the same irredundant cover as
+     * {@link BDDValuationSetFactory#createRepresentative(int, BiMap)} for some
+     * function between {@param lower} and {@param upper}. The cover is returned
+     * together with its truth table.
+     */
+    private Tuple<List<Tuple<BitSet, BitSet>>, Long> isop(long lower, long upper) {
+        if (lower == 0L) {
+            return new Tuple<>(SumOfProducts.EMPTY, 0L);
+        }
+
+        if (upper == universe) {
+            return new Tuple<>(SumOfProducts.TAUTOLOGY, universe);
+        }
+
+        int variable = 0;
+
+        while (lowCofactor(lower, variable) == highCofactor(lower, variable) && lowCofactor(upper, variable) == highCofactor(upper, variable)) {
+            variable++;
+        }
+
+        long lower0 = lowCofactor(lower, variable);
+        long lower1 = highCofactor(lower, variable);
+        long upper0 = lowCofactor(upper, variable);
+        long upper1 = highCofactor(upper, variable);
+
+        Tuple<List<Tuple<BitSet, BitSet>>, Long> negative = isop(lower0 & ~upper1, upper0);
+        Tuple<List<Tuple<BitSet, BitSet>>, Long> positive = isop(lower1 & ~upper0, upper1);
+        Tuple<List<Tuple<BitSet, BitSet>>, Long> independent = isop((lower0 & ~negative.right) | (lower1 & ~positive.right), upper0 & upper1);
+
+        long table = (negative.right & NEGATIVE[variable]) | (positive.right & ~NEGATIVE[variable]) | independent.right;
+        return new Tuple<>(SumOfProducts.combine(variable, negative.left, positive.left, independent.left), table);
+    }
+
+    /**
+     * Enumerates the paths of the reduced BDD of a truth table in the same
+     * order as the cubes of {@link BDDValuationSetFactory}.
+     */
+    private final class CubeIterator implements Iterator<Tuple<BitSet, BitSet>> {
+
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        @Nullable
+        private Tuple<BitSet, BitSet> next;
+
+        CubeIterator(long table) {
+            stack.push(new Frame(table, 0, new BitSet(), new BitSet()));
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+
+            while (next == null && !stack.isEmpty()) {
+                Frame frame = stack.pop();
+                long table = frame.table;
+                int variable = frame.variable;
+
+                while (table != 0L && table != universe) {
+                    while (lowCofactor(table, variable) == highCofactor(table, variable)) {
+                        variable++;
+                    }
+
+                    frame.care.set(variable);
+                    BitSet highValues = (BitSet) frame.values.clone();
+                    highValues.set(variable);
+                    stack.push(new Frame(highCofactor(table, variable), variable + 1, highValues, (BitSet) frame.care.clone()));
+
+                    table = lowCofactor(table, variable);
+                    variable++;
+                }
+
+                if (table == universe) {
+                    next = new Tuple<>(frame.values, frame.care);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Tuple<BitSet, BitSet> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Tuple<BitSet, BitSet> cube = next;
+            advance();
+            return cube;
+        }
+    }
+
+    private static final class Frame {
+        final long table;
+        final int variable;
+        final BitSet values;
+        final BitSet care;
+
+        Frame(long table, int variable, BitSet values, BitSet care) {
+            this.table = table;
+            this.variable = variable;
+            this.values = values;
+            this.care = care;
+        }
+    }
+
+    public class TruthTableValuationSet implements ValuationSet {
+
+        private long table;
+
+        TruthTableValuationSet(long table) {
+            this.table = table;
+        }
+
+        @Override
+        public BooleanExpression<AtomLabel> toExpression(@Nullable BiMap<String, Integer> literalNames) {
+            return SumOfProducts.toExpression(isop(table, table).left, literalNames);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            TruthTableValuationSet that = (TruthTableValuationSet) o;
+            return table == that.table;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(table);
+        }
+
+        @Override
+        public ValuationSet complement() {
+            return new TruthTableValuationSet(~table & universe);
+        }
+
+        @Override
+        public boolean isUniverse() {
+            return table == universe;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return table == 0L;
+        }
+
+        @Nonnull
+        @Override
+        public Iterator<BitSet> iterator() {
+            return new Minterms(cubes(), size);
+        }
+
+        @Override
+        public Iterator<Tuple<BitSet, BitSet>> cubes() {
+            return new CubeIterator(table);
+        }
+
+        @Override
+        public int size() {
+            return Long.bitCount(table);
+        }
+
+        @Override
+        public BigInteger countModels() {
+            return BigInteger.valueOf(Long.bitCount(table));
+        }
+
+        @Override
+        public boolean contains(BitSet valuation) {
+            return (table & (1L << index(valuation))) != 0;
+        }
+
+        @Override
+        public boolean containsAll(ValuationSet other) {
+            long otherTable = table(other);
+            return (otherTable & ~table) == 0L;
+        }
+
+        @Override
+        public void add(@Nonnull BitSet valuation) {
+            table |= 1L << index(valuation);
+        }
+
+        @Override
+        public void addAll(@Nonnull ValuationSet other) {
+            table |= table(other);
+        }
+
+        @Override
+        public void addAllWith(@Nonnull ValuationSet other) {
+            table |= table(other);
+        }
+
+        @Override
+        public void removeAll(@Nonnull ValuationSet other) {
+            table &= ~table(other);
+        }
+
+        @Override
+        public void retainAll(@Nonnull ValuationSet other) {
+            table &= table(other);
+        }
+
+        @Override
+        public boolean intersects(ValuationSet other) {
+            return (table & table(other)) != 0L;
+        }
+
+        @Override
+        public ValuationSet intersect(ValuationSet other) {
+            return new TruthTableValuationSet(table & table(other));
+        }
+
+        @Override
+        public BitSet getSupport() {
+            BitSet support = new BitSet();
+
+            for (int i = 0; i < size; i++) {
+                if (lowCofactor(table, i) != highCofactor(table, i)) {
+                    support.set(i);
+                }
+            }
+
+            return support;
+        }
+
+        @Override
+        public TruthTableValuationSet copy() {
+            return new TruthTableValuationSet(table);
+        }
+
+        @Override
+        public void free() {
+            // Truth tables are not reference counted.
+        }
+
+        @Override
+        public String toString() {
+            return toExpression().toString();
+        }
+    }
+}
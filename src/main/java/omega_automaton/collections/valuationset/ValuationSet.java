@@ -17,7 +17,9 @@
 
 package omega_automaton.collections.valuationset;
 
+import java.math.BigInteger;
 import java.util.BitSet;
+import java.util.Iterator;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -26,6 +28,7 @@ import com.google.common.collect.BiMap;
 
 import jhoafparser.ast.AtomLabel;
 import jhoafparser.ast.BooleanExpression;
+import omega_automaton.collections.Tuple;
 
 /**
  * This interface is very similar to {@link java.util.Set<BitSet>} but breaks on
@@ -67,13 +70,46 @@ public interface ValuationSet extends Iterable<BitSet> {
 
     void retainAll(@Nonnull ValuationSet other);
 
+    /**
+     * @return the number of valuations in this set or
+     *         {@link Integer#MAX_VALUE}, if there are more.
+     * @see ValuationSet#countModels()
+     */
     int size();
 
+    /**
+     * @return the exact number of valuations in this set.
+     */
+    BigInteger countModels();
+
+    /**
+     * Enumerates this set lazily as disjoint cubes. A cube is a pair (values,
+     * care set) and contains each valuation agreeing with the values on the
+     * care set. The set must not be modified during the iteration.
+     */
+    Iterator<Tuple<BitSet, BitSet>> cubes();
+
+    /**
+     * Enumerates the valuations of this set lazily by expanding the
+     * {@link ValuationSet#cubes()}. The set must not be modified during the
+     * iteration.
+     */
+    @Override
+    Iterator<BitSet> iterator();
+
     void free();
 
     ValuationSet copy();
 
     boolean intersects(ValuationSet value);
 
+    /**
+     * Determine the atomic propositions this set depends on.
+     *
+     * @return the indices of all atomic propositions, whose value can change
+     *         membership of a valuation in this set.
+     */
+    BitSet getSupport();
+
     ValuationSet intersect(ValuationSet v2);
 }
@@ -17,7 +17,18 @@
 
 package omega_automaton.collections.valuationset;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import omega_automaton.collections.Tuple;
 
 public interface ValuationSetFactory {
 
@@ -29,5 +40,120 @@ public interface ValuationSetFactory {
 
     ValuationSet createValuationSet(BitSet valuation, BitSet restrictedAlphabet);
 
+    /**
+     * @return the set of valuations that agree with one of
+     *         {@param valuations} on {@param restrictedAlphabet}.
+     */
+    default ValuationSet createValuationSet(Collection<BitSet> valuations, BitSet restrictedAlphabet) {
+        ValuationSet valuationSet = createEmptyValuationSet();
+        valuations.forEach(valuation -> valuationSet.addAllWith(createValuationSet(valuation, restrictedAlphabet)));
+        return valuationSet;
+    }
+
+    /**
+     * @return a new set containing the valuations of any of
+     *         {@param valuationSets}, which are not modified.
+     */
+    default ValuationSet union(Collection<? extends ValuationSet> valuationSets) {
+        ValuationSet union = createEmptyValuationSet();
+        valuationSets.forEach(union::addAll);
+        return union;
+    }
+
+    /**
+     * @return a new set containing the valuations of all of
+     *         {@param valuationSets}, which are not modified. The intersection
+     *         of no sets is the universe.
+     */
+    default ValuationSet intersection(Collection<? extends ValuationSet> valuationSets) {
+        ValuationSet intersection = createUniverseValuationSet();
+        valuationSets.forEach(intersection::retainAll);
+        return intersection;
+    }
+
     int getSize();
+
+    /**
+     * Writes a self-contained encoding of {@param valuationSet} to
+     * {@param output}, which can be read back by
+     * {@link ValuationSetFactory#read(DataInput)}.
+     */
+    void write(ValuationSet valuationSet, DataOutput output) throws IOException;
+
+    ValuationSet read(DataInput input) throws IOException;
+
+    /**
+     * Writes {@param valuationSets} to {@param output}, such that they can be
+     * read back in the same order by
+     * {@link ValuationSetFactory#readAll(DataInput)}. Implementations may
+     * share common structure of the sets in the encoding.
+     */
+    default void writeAll(Collection<? extends ValuationSet> valuationSets, DataOutput output) throws IOException {
+        output.writeInt(valuationSets.size());
+
+        for (ValuationSet valuationSet : valuationSets) {
+            write(valuationSet, output);
+        }
+    }
+
+    default List<ValuationSet> readAll(DataInput input) throws IOException {
+        List<ValuationSet> valuationSets = new ArrayList<>();
+
+        for (int i = input.readInt(); i > 0; i--) {
+            valuationSets.add(read(input));
+        }
+
+        return valuationSets;
+    }
+
+    /**
+     * Creates a set of this factory from {@param valuationSet}, which may
+     * belong to another factory. The source factory is only read; if it is
+     * shared between threads, the caller has to synchronize on it.
+     *
+     * @param renaming
+     *            maps the i-th atomic proposition of the source factory to the
+     *            {@code renaming[i]}-th atomic proposition of this factory,
+     *            or null to keep the atomic propositions.
+     * @throws IllegalArgumentException
+     *             if an atomic proposition in the support of
+     *             {@param valuationSet} is renamed to one outside of the
+     *             alphabet of this factory.
+     */
+    default ValuationSet transfer(ValuationSet valuationSet, @Nullable int[] renaming) {
+        List<ValuationSet> cubes = new ArrayList<>();
+        Iterator<Tuple<BitSet, BitSet>> iterator = valuationSet.cubes();
+
+        while (iterator.hasNext()) {
+            Tuple<BitSet, BitSet> cube = iterator.next();
+            BitSet values = new BitSet();
+            BitSet care = new BitSet();
+
+            for (int i = cube.right.nextSetBit(0); i >= 0; i = cube.right.nextSetBit(i + 1)) {
+                int target = renaming == null ? i : renaming[i];
+
+                if (target < 0 || target >= getSize()) {
+                    throw new IllegalArgumentException("Atomic proposition " + i + " is renamed to " + target + ", which is not in the alphabet.");
+                }
+
+                values.set(target, cube.left.get(i));
+                care.set(target);
+            }
+
+            cubes.add(createValuationSet(values, care));
+        }
+
+        ValuationSet union = union(cubes);
+        cubes.forEach(ValuationSet::free);
+        return union;
+    }
+
+    /**
+     * @return true if the factory and its valuation sets may be used from
+     *         several threads without external synchronization.
+     * @see SynchronizedValuationSetFactory
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.collections.valuationset;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Hands out one shared {@link BDDValuationSetFactory} per list of atomic
+ * propositions, such that automata over the same alphabet share the nodes and
+ * caches of one BDD and their labels can be combined directly. The factories
+ * are reference counted: a factory obtained by
+ * {@link ValuationSetFactoryRegistry#acquire(List)} has to be given back by
+ * {@link ValuationSetFactoryRegistry#release(ValuationSetFactory)} and is
+ * dropped from the registry after its last release.
+ * <p>
+ * Shared factories start with a small node table that grows on demand. They
+ * are not thread-safe; automata sharing a factory must not be used from
+ * several threads at once.
+ */
+public class ValuationSetFactoryRegistry {
+
+    private static final int INITIAL_NODES = 1024;
+    private static final ValuationSetFactoryRegistry SHARED = new ValuationSetFactoryRegistry();
+
+    private final Map<List<String>, BDDValuationSetFactory> factories = new HashMap<>();
+    private final Map<ValuationSetFactory, List<String>> keys = new IdentityHashMap<>();
+    private final Map<ValuationSetFactory, Integer> references = new IdentityHashMap<>();
+
+    /**
+     * @return the registry of the whole process.
+     */
+    public static ValuationSetFactoryRegistry getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the factory for {@param atomicPropositions}, which is created if
+     *         there is none yet. Each call has to be matched by a call to
+     *         {@link ValuationSetFactoryRegistry#release(ValuationSetFactory)}.
+     */
+    public synchronized BDDValuationSetFactory acquire(List<String> atomicPropositions) {
+        List<String> key = ImmutableList.copyOf(atomicPropositions);
+        BDDValuationSetFactory factory = factories.get(key);
+
+        if (factory == null) {
+            factory = new BDDValuationSetFactory(key.size(), false, INITIAL_NODES);
+            factories.put(key, factory);
+            keys.put(factory, key);
+        }
+
+        references.merge(factory, 1, Integer::sum);
+        return factory;
+    }
+
+    /**
+     * Gives back a factory obtained from this registry.
+     *
+     * @throws IllegalArgumentException
+     *             if {@param factory} is not held from this registry.
+     */
+    public synchronized void release(ValuationSetFactory factory) {
+        Integer count = references.get(factory);
+
+        if (count == null) {
+            throw new IllegalArgumentException("The factory is not held from this registry.");
+        }
+
+        if (count > 1) {
+            references.put(factory, count - 1);
+            return;
+        }
+
+        references.remove(factory);
+        factories.remove(keys.remove(factory));
+    }
+
+    /**
+     * @return the number of references to {@param factory}, which is zero if
+     *         it is not held from this registry.
+     */
+    public synchronized int getReferences(ValuationSetFactory factory) {
+        return references.getOrDefault(factory, 0);
+    }
+
+    /**
+     * @return the number of factories currently held from this registry.
+     */
+    public synchronized int size() {
+        return factories.size();
+    }
+}
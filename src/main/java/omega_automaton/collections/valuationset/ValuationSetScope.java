@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.collections.valuationset;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+/**
+ * Owns the reference-counted valuation sets created by the current thread
+ * while the scope is open and frees all of them in bulk when it is closed:
+ *
+ * <pre>
+ * try (ValuationSetScope scope = ValuationSetScope.open()) {
+ *     ValuationSet label = ...;
+ *     result = scope.escape(label.copy());
+ * }
+ * </pre>
+ *
+ * Scopes nest; a set is owned by the innermost open scope of the thread that
+ * created it. Sets that outlive the scope, e.g. labels stored in an automaton,
+ * have to be passed to {@link ValuationSetScope#escape(ValuationSet)}. A
+ * scope has to be closed by the thread that opened it.
+ * <p>
+ * An owner that is not bound to a thread, e.g. an automaton explored by
+ * several worker threads, is created by {@link ValuationSetScope#create()}
+ * and entered by each thread with {@link ValuationSetScope#call(Supplier)}.
+ * A set freed before its scope is closed is no longer owned by it.
+ */
+public final class ValuationSetScope implements AutoCloseable {
+
+    private static final ThreadLocal<Deque<ValuationSetScope>> SCOPES = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final AtomicInteger OPEN = new AtomicInteger();
+    // Innermost scope while creating sets that are freed by their owner.
+    private static final ValuationSetScope DETACHED = new ValuationSetScope();
+
+    private final Set<ValuationSet> owned = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private volatile boolean closed;
+
+    private ValuationSetScope() {
+    }
+
+    /**
+     * Opens a new scope for the current thread.
+     */
+    public static ValuationSetScope open() {
+        ValuationSetScope scope = new ValuationSetScope();
+        SCOPES.get().push(scope);
+        OPEN.incrementAndGet();
+        return scope;
+    }
+
+    /**
+     * Creates a scope that is not bound to a thread. Sets are only registered
+     * with it while a thread runs {@link ValuationSetScope#call(Supplier)}; it
+     * is closed by any thread, once no thread is inside it.
+     */
+    public static ValuationSetScope create() {
+        return new ValuationSetScope();
+    }
+
+    /**
+     * Runs {@param body} such that the sets it creates are not owned by any
+     * scope, e.g. labels of a data structure that frees them itself.
+     *
+     * @return the result of {@param body}.
+     */
+    public static <T> T detached(Supplier<T> body) {
+        return DETACHED.call(body);
+    }
+
+    /**
+     * Runs {@param body} with this scope as innermost scope of the current
+     * thread. The scope stays open afterwards.
+     *
+     * @return the result of {@param body}.
+     */
+    public <T> T call(Supplier<T> body) {
+        Deque<ValuationSetScope> scopes = SCOPES.get();
+        scopes.push(this);
+        OPEN.incrementAndGet();
+
+        try {
+            return body.get();
+        } finally {
+            // Scopes opened by body and not closed are closed as well.
+            while (!scopes.isEmpty() && scopes.peek() != this) {
+                scopes.pop().release();
+                OPEN.decrementAndGet();
+            }
+
+            scopes.pop();
+            OPEN.decrementAndGet();
+        }
+    }
+
+    /**
+     * Registers {@param valuationSet} with the innermost scope of the current
+     * thread.
+     *
+     * @return the scope owning {@param valuationSet} or null, if there is
+     *         none.
+     */
+    @Nullable
+    static ValuationSetScope register(ValuationSet valuationSet) {
+        if (OPEN.get() == 0) {
+            return null;
+        }
+
+        ValuationSetScope scope = SCOPES.get().peek();
+
+        if (scope == null || scope == DETACHED) {
+            return null;
+        }
+
+        scope.owned.add(valuationSet);
+        return scope;
+    }
+
+    /**
+     * Frees {@param valuationSet} when the innermost scope of the current
+     * thread is closed, or immediately, if there is none. This defers
+     * releasing sets that callers may still use, e.g. labels of a row that
+     * is evicted from a cache while the row is still being read.
+     */
+    public static void freeLater(ValuationSet valuationSet) {
+        ValuationSetScope scope = OPEN.get() == 0 ? null : SCOPES.get().peek();
+
+        if (scope == null || scope == DETACHED) {
+            valuationSet.free();
+            return;
+        }
+
+        ValuationSet set = SynchronizedValuationSetFactory.unwrap(valuationSet);
+
+        if (set instanceof BDDValuationSetFactory.BDDValuationSet) {
+            BDDValuationSetFactory.BDDValuationSet bdd = (BDDValuationSetFactory.BDDValuationSet) set;
+            ValuationSetScope owner = bdd.getScope();
+
+            if (owner != null) {
+                owner.unregister(bdd);
+            }
+
+            bdd.setScope(scope);
+        }
+
+        scope.owned.add(set);
+    }
+
+    /**
+     * Removes the freed {@param valuationSet} from this scope.
+     */
+    void unregister(ValuationSet valuationSet) {
+        owned.remove(valuationSet);
+    }
+
+    /**
+     * Removes {@param valuationSet} from this scope and hands it to the
+     * enclosing scope, if there is one.
+     *
+     * @return {@param valuationSet}
+     */
+    public <T extends ValuationSet> T escape(T valuationSet) {
+        // Scopes own the sets of the wrapped factory.
+        ValuationSet set = SynchronizedValuationSetFactory.unwrap(valuationSet);
+        owned.remove(set);
+
+        Deque<ValuationSetScope> scopes = SCOPES.get();
+        ValuationSetScope owner = null;
+        boolean parent = false;
+
+        for (ValuationSetScope scope : scopes) {
+            if (parent) {
+                if (scope != DETACHED) {
+                    owner = scope;
+                    owner.owned.add(set);
+                }
+
+                break;
+            }
+
+            parent = scope == this;
+        }
+
+        if (set instanceof BDDValuationSetFactory.BDDValuationSet) {
+            ((BDDValuationSetFactory.BDDValuationSet) set).setScope(owner);
+        }
+
+        return valuationSet;
+    }
+
+    /**
+     * Frees all sets owned by this scope and closes it. Scopes opened inside
+     * this scope and not closed yet are closed as well.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        Deque<ValuationSetScope> scopes = SCOPES.get();
+
+        if (!scopes.contains(this)) {
+            release();
+            return;
+        }
+
+        while (!scopes.isEmpty()) {
+            ValuationSetScope scope = scopes.pop();
+            scope.release();
+            OPEN.decrementAndGet();
+
+            if (scope == this) {
+                break;
+            }
+        }
+    }
+
+    private void release() {
+        closed = true;
+
+        // Freeing a set unregisters it, hence the sets are taken out first.
+        ValuationSet[] sets;
+
+        synchronized (owned) {
+            sets = owned.toArray(new ValuationSet[owned.size()]);
+            owned.clear();
+        }
+
+        // Sets of a BDDValuationSetFactory are freed under the monitor of
+        // their factory, which is also held by a
+        // SynchronizedValuationSetFactory wrapping it. Other sets are only
+        // owned through freeLater(ValuationSet).
+        for (ValuationSet set : sets) {
+            if (set instanceof BDDValuationSetFactory.BDDValuationSet) {
+                synchronized (((BDDValuationSetFactory.BDDValuationSet) set).getOwner()) {
+                    set.free();
+                }
+            } else {
+                set.free();
+            }
+        }
+    }
+}
@@ -54,10 +54,15 @@ public class HOAConsumerExtended {
     protected AutomatonState<?> currentState;
     private final @Nullable BiMap<String, Integer> literalNames;
 
+    /**
+     * @param size
+     *            the number of states or a negative number, if it is not known
+     *            in advance.
+     */
     public HOAConsumerExtended(HOAConsumer hoa, ValuationSetFactory valSetFac, @Nullable BiMap<String, Integer> aliases, @Nonnull OmegaAcceptance acceptance,
             AutomatonState<?> initialState, int size) {
         this.hoa = hoa;
-        stateNumbers = new HashMap<>(size);
+        stateNumbers = size >= 0 ? new HashMap<>(size) : new HashMap<>();
         literalNames = aliases;
 
         try {
@@ -70,7 +75,7 @@ public class HOAConsumerExtended {
                 hoa.setNumberOfStates(size);
             }
 
-            if (initialState != null && size > 0) {
+            if (initialState != null && size != 0) {
                 hoa.addStartStates(Collections.singletonList(getStateId(initialState)));
                 if (acceptance.getName() != null) {
                     hoa.provideAcceptanceName(acceptance.getName(), acceptance.getNameExtra());
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import com.google.common.collect.ImmutableSet;
+import jhoafparser.consumer.HOAConsumerPrint;
+import omega_automaton.acceptance.BuchiAcceptance;
+import omega_automaton.collections.valuationset.BDDValuationSetFactory;
+import omega_automaton.collections.valuationset.SynchronizedValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AutomatonTest {
+    private TableAutomaton<BuchiAcceptance> automaton;
+
+    @Before
+    public void setUp() throws Exception {
+        // A chain 0 -> 1 -> 2 -> 3 -> 4 with edges back to 0: each state but
+        // the sink 4 has two edges, 9 edges in total.
+        automaton = new TableAutomaton<>(new BuchiAcceptance(), new BDDValuationSetFactory(1), new int[][] { { 1, 0 }, { 2, 0 }, { 3, 0 }, { 4, 0 }, { 4, 4 } });
+    }
+
+    @Test
+    public void testMaxStates() throws Exception {
+        assertFalse(automaton.generate(ExplorationLimits.UNLIMITED.withMaxStates(2)));
+        assertEquals(2, automaton.size());
+        assertEquals(ImmutableSet.of(automaton.getState(2)), automaton.getFrontier());
+
+        assertTrue(automaton.generate(ExplorationLimits.UNLIMITED));
+        assertEquals(5, automaton.size());
+        assertTrue(automaton.getFrontier().isEmpty());
+    }
+
+    @Test
+    public void testMaxEdges() throws Exception {
+        assertFalse(automaton.generate(ExplorationLimits.UNLIMITED.withMaxEdges(3)));
+        assertEquals(2, automaton.size());
+
+        // The edges explored by the first call count towards the limit.
+        assertFalse(automaton.generate(ExplorationLimits.UNLIMITED.withMaxEdges(7)));
+        assertEquals(4, automaton.size());
+        assertEquals(ImmutableSet.of(automaton.getState(4)), automaton.getFrontier());
+
+        // Removing state 3 removes its two edges and the edge from state 2.
+        automaton.removeStatesIf(state -> state.id == 3);
+        assertTrue(automaton.generate(ExplorationLimits.UNLIMITED.withMaxEdges(6)));
+        assertEquals(4, automaton.size());
+    }
+
+    @Test
+    public void testMaxEdgesIndexed() throws Exception {
+        automaton.enablePredecessorIndex();
+        assertFalse(automaton.generate(ExplorationLimits.UNLIMITED.withMaxEdges(7)));
+
+        automaton.removeStates(ImmutableSet.of(automaton.getState(3)));
+        assertTrue(automaton.generate(ExplorationLimits.UNLIMITED.withMaxEdges(6)));
+        assertEquals(4, automaton.size());
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        assertFalse(automaton.generate(ExplorationLimits.UNLIMITED.withCancellation(() -> true)));
+        assertEquals(0, automaton.size());
+        assertEquals(ImmutableSet.of(automaton.getState(0)), automaton.getFrontier());
+
+        assertTrue(automaton.generate(ExplorationLimits.UNLIMITED));
+        assertEquals(5, automaton.size());
+    }
+
+    static String toHOAStreaming(Automaton<?, ?> automaton) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        automaton.toHOAStreaming(new HOAConsumerPrint(output), null);
+        return output.toString();
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        BDDValuationSetFactory factory = new BDDValuationSetFactory(1);
+        factory.setLeakTracking(true);
+        automaton = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 1, 0 }, { 2, 0 }, { 3, 0 }, { 4, 0 }, { 4, 4 } });
+
+        // Computed rows are written and released.
+        String hoa = toHOAStreaming(automaton);
+        assertEquals(0, automaton.size());
+        assertTrue(factory.getLeaks().isEmpty());
+
+        // Stored rows are written, but not released.
+        automaton.generate();
+        int labels = factory.getLeaks().size();
+        assertEquals(hoa, toHOAStreaming(automaton));
+        assertEquals(labels, factory.getLeaks().size());
+
+        for (TableAutomaton.State state : automaton.getStates()) {
+            automaton.getSuccessors(state).values().forEach(label -> assertFalse(label.isEmpty()));
+        }
+
+        automaton.free();
+        assertTrue(factory.getLeaks().isEmpty());
+    }
+
+    @Test
+    public void testOwnershipParallel() throws Exception {
+        BDDValuationSetFactory factory = new BDDValuationSetFactory(1);
+        factory.setLeakTracking(true);
+        Ring ring = new Ring(new SynchronizedValuationSetFactory(factory), 64);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            ring.generateParallel(ring.getInitialState(), pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        // The temporaries of the workers are released, the labels are kept.
+        assertEquals(64, ring.size());
+        assertEquals(64, factory.getLeaks().size());
+
+        ring.free();
+        assertTrue(factory.getLeaks().isEmpty());
+    }
+
+    @Test
+    public void testParallelRowsOverlap() throws Exception {
+        // Each of the two branches waits until the other one is computed.
+        Fan fan = new Fan(new SynchronizedValuationSetFactory(new BDDValuationSetFactory(1)), new CountDownLatch(2));
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            fan.generateParallel(fan.getInitialState(), pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(3, fan.size());
+        assertTrue(fan.overlapped.get());
+    }
+
+    @Test
+    public void testParallelRequiresThreadSafeFactory() throws Exception {
+        Fan fan = new Fan(new BDDValuationSetFactory(1), new CountDownLatch(1));
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            fan.generateParallel(fan.getInitialState(), pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(3, fan.size());
+        assertEquals(ImmutableSet.of(Thread.currentThread()), fan.threads);
+    }
+
+    /**
+     * State 0 branches to the states 1 and 2, whose rows count down a latch
+     * and wait for it.
+     */
+    private static final class Fan extends Automaton<Fan.State, BuchiAcceptance> {
+        private final CountDownLatch branches;
+        private final AtomicBoolean overlapped = new AtomicBoolean(true);
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        Fan(ValuationSetFactory factory, CountDownLatch branches) {
+            super(new BuchiAcceptance(), factory);
+            this.branches = branches;
+        }
+
+        @Override
+        protected State generateInitialState() {
+            return new State(this, 0);
+        }
+
+        private static final class State implements AutomatonState<State> {
+            private final Fan fan;
+            private final int id;
+
+            State(Fan fan, int id) {
+                this.fan = fan;
+                this.id = id;
+            }
+
+            @Override
+            public ValuationSetFactory getFactory() {
+                return fan.getFactory();
+            }
+
+            @Override
+            public Edge<State> getSuccessor(BitSet valuation) {
+                return Edge.of(id == 0 ? new State(fan, valuation.isEmpty() ? 1 : 2) : this, 0L);
+            }
+
+            @Override
+            public Map<Edge<State>, ValuationSet> getSymbolicSuccessors() {
+                fan.threads.add(Thread.currentThread());
+                Map<Edge<State>, ValuationSet> row = new LinkedHashMap<>();
+
+                if (id == 0) {
+                    row.put(Edge.of(new State(fan, 1), 0L), getFactory().createUniverseValuationSet());
+                    row.put(Edge.of(new State(fan, 2), 0L), getFactory().createUniverseValuationSet());
+                    return row;
+                }
+
+                fan.branches.countDown();
+
+                try {
+                    if (!fan.branches.await(10, TimeUnit.SECONDS)) {
+                        fan.overlapped.set(false);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    fan.overlapped.set(false);
+                }
+
+                row.put(Edge.of(this, 0L), getFactory().createUniverseValuationSet());
+                return row;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof State && ((State) o).id == id && ((State) o).fan == fan;
+            }
+
+            @Override
+            public int hashCode() {
+                return id;
+            }
+        }
+    }
+
+    @Test
+    public void testSymbolicSuccessorsAreComputedOnce() throws Exception {
+        Ring ring = new Ring(new BDDValuationSetFactory(1), 4, false);
+        ring.generate();
+        assertEquals(4, ring.size());
+        assertEquals(4, ring.symbolicCalls.get());
+        ring.free();
+    }
+
+    /**
+     * A cycle of states, where each row computation leaves a temporary
+     * valuation set behind. Unless symbolic, the rows are computed from
+     * {@link AutomatonState#getSuccessor(BitSet)}.
+     */
+    private static final class Ring extends Automaton<Ring.State, BuchiAcceptance> {
+        private final int size;
+        private final boolean symbolic;
+        private final AtomicInteger symbolicCalls = new AtomicInteger();
+
+        Ring(ValuationSetFactory factory, int size) {
+            this(factory, size, true);
+        }
+
+        Ring(ValuationSetFactory factory, int size, boolean symbolic) {
+            super(new BuchiAcceptance(), factory);
+            this.size = size;
+            this.symbolic = symbolic;
+        }
+
+        @Override
+        protected State generateInitialState() {
+            return new State(this, 0);
+        }
+
+        private static final class State implements AutomatonState<State> {
+            private final Ring ring;
+            private final int id;
+
+            State(Ring ring, int id) {
+                this.ring = ring;
+                this.id = id;
+            }
+
+            @Override
+            public ValuationSetFactory getFactory() {
+                return ring.getFactory();
+            }
+
+            @Override
+            public Edge<State> getSuccessor(BitSet valuation) {
+                return Edge.of(new State(ring, (id + 1) % ring.size), 0L);
+            }
+
+            @Override
+            public Map<Edge<State>, ValuationSet> getSymbolicSuccessors() {
+                ring.symbolicCalls.incrementAndGet();
+
+                if (!ring.symbolic) {
+                    return null;
+                }
+
+                getFactory().createEmptyValuationSet();
+                return Collections.singletonMap(getSuccessor(new BitSet()), getFactory().createUniverseValuationSet());
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof State && ((State) o).id == id && ((State) o).ring == ring;
+            }
+
+            @Override
+            public int hashCode() {
+                return id;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import com.google.common.collect.ImmutableSet;
+import omega_automaton.acceptance.BuchiAcceptance;
+import omega_automaton.algorithms.SCCAnalyser;
+import omega_automaton.collections.valuationset.BDDValuationSetFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompactAutomatonTest {
+    private TableAutomaton<BuchiAcceptance> automaton;
+
+    @Before
+    public void setUp() throws Exception {
+        // 0 -> {1, 2}, 1 <-> 2, 3 -> 0 is not reachable.
+        automaton = new TableAutomaton<>(new BuchiAcceptance(), new BDDValuationSetFactory(1), new int[][] { { 1, 2 }, { 2, 2 }, { 1, -1 }, { 0, 0 } },
+            new long[][] { { 0, 0 }, { 1, 0 }, { 0, 0 }, { 0, 0 } });
+        automaton.generate();
+        automaton.generate(automaton.getState(3));
+    }
+
+    @Test
+    public void testNumbering() throws Exception {
+        CompactAutomaton<TableAutomaton.State, BuchiAcceptance> compact = CompactAutomaton.of(automaton);
+
+        assertEquals(4, compact.size());
+        assertEquals(0, compact.getInitialStateId());
+        assertEquals(3, compact.getId(automaton.getState(3)));
+        assertEquals(-1, compact.getId(automaton.getState(4)));
+        assertEquals(6, compact.getEdgeCount());
+        assertEquals(2, compact.getMaskCount());
+
+        for (TableAutomaton.State state : automaton.getStates()) {
+            assertEquals(automaton.getSuccessors(state), new HashMap<>(compact.getSuccessors(state)));
+        }
+    }
+
+    @Test
+    public void testSCCs() throws Exception {
+        CompactAutomaton<TableAutomaton.State, BuchiAcceptance> compact = CompactAutomaton.of(automaton);
+        List<Set<TableAutomaton.State>> sccs = SCCAnalyser.SCCsStates(compact);
+
+        assertEquals(SCCAnalyser.SCCsStates(automaton), sccs);
+        assertEquals(ImmutableSet.of(automaton.getState(1), automaton.getState(2)), sccs.get(0));
+    }
+
+    @Test
+    public void testRemoveUnreachableStates() throws Exception {
+        CompactAutomaton<TableAutomaton.State, BuchiAcceptance> compact = CompactAutomaton.of(automaton);
+        compact.removeUnreachableStates();
+        assertEquals(3, compact.size());
+        assertEquals(-1, compact.getId(automaton.getState(3)));
+
+        compact.removeStates(ImmutableSet.of(automaton.getState(2)));
+        assertEquals(new HashSet<>(ImmutableSet.of(automaton.getState(0), automaton.getState(1))), compact.getStates());
+        assertEquals(1, compact.getRowEnd(compact.getId(automaton.getState(0))) - compact.getRowStart(0));
+        assertEquals(0, compact.getSuccessors(automaton.getState(1)).size());
+    }
+
+    @Test
+    public void testStreamingUsesStoredRows() throws Exception {
+        int[][] successors = { { 1, 0 }, { 0, 1 } };
+        TableAutomaton<BuchiAcceptance> table = new TableAutomaton<>(new BuchiAcceptance(), automaton.getFactory(), successors);
+        CompactAutomaton<TableAutomaton.State, BuchiAcceptance> compact = CompactAutomaton.of(table);
+        String hoa = AutomatonTest.toHOAStreaming(compact);
+
+        // Changing the table the states are computed from does not affect
+        // the stored rows.
+        successors[0][0] = 0;
+        assertEquals(hoa, AutomatonTest.toHOAStreaming(compact));
+        assertEquals(AutomatonTest.toHOAStreaming(table), hoa);
+    }
+}
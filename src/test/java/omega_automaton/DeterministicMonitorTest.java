@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import omega_automaton.acceptance.BuchiAcceptance;
+import omega_automaton.collections.valuationset.BDDValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSetScope;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeterministicMonitorTest {
+    private TableAutomaton<BuchiAcceptance> automaton;
+
+    @Before
+    public void setUp() throws Exception {
+        // Over valuations {}, {0}, {1}, {0, 1}: state 1 only depends on
+        // proposition 1, state 2 is a rejecting sink.
+        automaton = new TableAutomaton<>(new BuchiAcceptance(), new BDDValuationSetFactory(2), new int[][] { { 0, 1, 2, -1 }, { 1, 1, 0, 0 }, { 2, 2, 2, 2 } },
+            new long[][] { { 0, 0, 0, 0 }, { 1, 1, 0, 0 }, { 0, 0, 0, 0 } });
+    }
+
+    @Test
+    public void testStep() throws Exception {
+        DeterministicMonitor<TableAutomaton.State> monitor = DeterministicMonitor.of(automaton);
+        int initial = monitor.getInitialState();
+        int one = monitor.getId(automaton.getState(1));
+
+        assertEquals(3, monitor.size());
+        assertEquals(automaton.getState(0), monitor.getState(initial));
+        assertEquals(initial, monitor.step(initial, 0b00));
+        assertEquals(one, monitor.step(initial, 0b01));
+        assertEquals(-1, monitor.step(initial, 0b11));
+        assertEquals(one, monitor.step(one, 0b01));
+        assertEquals(initial, monitor.step(one, 0b10));
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        DeterministicMonitor<TableAutomaton.State> monitor = DeterministicMonitor.of(automaton);
+        long[] trace = { 0b01, 0b00, 0b10, 0b10 };
+        long[] marks = new long[trace.length];
+
+        assertEquals(monitor.getId(automaton.getState(2)), monitor.run(monitor.getInitialState(), trace, 0, trace.length, marks));
+        assertArrayEquals(new long[] { 0, 1, 0, 0 }, marks);
+        assertEquals(-1, monitor.run(monitor.getInitialState(), new long[] { 0b11, 0b00 }));
+    }
+
+    @Test
+    public void testFree() throws Exception {
+        BDDValuationSetFactory factory = new BDDValuationSetFactory(2);
+        factory.setLeakTracking(true);
+        TableAutomaton<BuchiAcceptance> automaton = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 0, 1, 2, -1 }, { 1, 1, 0, 0 }, { 2, 2, 2, 2 } });
+        DeterministicMonitor<TableAutomaton.State> monitor;
+
+        // The labels of the monitor are not owned by a scope of the caller.
+        try (ValuationSetScope scope = ValuationSetScope.open()) {
+            monitor = DeterministicMonitor.of(automaton);
+        }
+
+        automaton.free();
+        assertFalse(factory.getLeaks().isEmpty());
+        assertEquals(0, monitor.step(monitor.getInitialState(), 0b00));
+
+        monitor.free();
+        assertTrue(factory.getLeaks().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNondeterministic() throws Exception {
+        automaton.generate();
+        automaton.transitions.get(automaton.getState(2)).put(Edge.of(automaton.getState(0), 0L), automaton.getFactory().createUniverseValuationSet());
+        DeterministicMonitor.of(automaton);
+    }
+}
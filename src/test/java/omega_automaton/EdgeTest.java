@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EdgeTest {
+
+    private static BitSet marks(int... sets) {
+        BitSet marks = new BitSet();
+
+        for (int set : sets) {
+            marks.set(set);
+        }
+
+        return marks;
+    }
+
+    @Test
+    public void testInterning() throws Exception {
+        Edge<String> edge = Edge.of("q", 0b101L);
+
+        assertSame(edge, Edge.of("q", marks(0, 2)));
+        assertSame(edge, Edge.of(new String("q"), 0b101L));
+        assertNotEquals(edge, Edge.of("q", 0b100L));
+        assertNotEquals(edge, Edge.of("p", 0b101L));
+        assertEquals(0b101L, edge.getAcceptanceMask());
+    }
+
+    @Test
+    public void testWideInterning() throws Exception {
+        BitSet marks = marks(1, 100);
+        Edge<String> edge = Edge.of("q", marks);
+
+        assertSame(edge, Edge.of("q", marks(1, 100)));
+
+        // The edge does not share the bit set passed in.
+        marks.set(2);
+        assertEquals(marks(1, 100), edge.getAcceptance());
+        assertSame(edge, Edge.of("q", marks(1, 100)));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testConstructor() throws Exception {
+        BitSet marks = marks(0, 2);
+        Edge<String> edge = new Edge<>("q", marks);
+        marks.set(1);
+
+        assertEquals(Edge.of("q", 0b101L), edge);
+        assertEquals(Edge.of("q", 0b101L).hashCode(), edge.hashCode());
+        assertEquals(Edge.of("q", marks(1, 100)), new Edge<>("q", marks(1, 100)));
+    }
+
+    @Test
+    public void testDefensiveCopy() throws Exception {
+        Edge<String> edge = Edge.of("q", 0b1L);
+        int hashCode = edge.hashCode();
+
+        edge.getAcceptance().set(3);
+
+        assertEquals(marks(0), edge.getAcceptance());
+        assertEquals(hashCode, edge.hashCode());
+        assertTrue(edge.inSet(0));
+        assertFalse(edge.inSet(3));
+        assertFalse(Edge.of("p", 0b1L).inSet(3));
+    }
+
+    @Test
+    public void testWithSuccessor() throws Exception {
+        assertSame(Edge.of(1, 0b11L), Edge.of("q", 0b11L).withSuccessor(1));
+        assertSame(Edge.of(1, marks(0, 64)), Edge.of("q", marks(0, 64)).withSuccessor(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWideMask() throws Exception {
+        Edge.of("q", marks(64)).getAcceptanceMask();
+    }
+}
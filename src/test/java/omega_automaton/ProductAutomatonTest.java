@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import omega_automaton.acceptance.BuchiAcceptance;
+import omega_automaton.acceptance.GeneralisedBuchiAcceptance;
+import omega_automaton.acceptance.ParityAcceptance;
+import omega_automaton.acceptance.ProductAcceptance;
+import omega_automaton.collections.valuationset.BDDValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProductAutomatonTest {
+    private final ValuationSetFactory factory = new BDDValuationSetFactory(2);
+    private TableAutomaton<BuchiAcceptance> left;
+    private TableAutomaton<BuchiAcceptance> right;
+
+    @Before
+    public void setUp() throws Exception {
+        // The left automaton stores proposition 0 and marks reading it, the
+        // right one does the same for proposition 1.
+        left = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 0, 1, 0, 1 }, { 0, 1, 0, 1 } }, new long[][] { { 0, 1, 0, 1 }, { 0, 1, 0, 1 } });
+        right = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 0, 0, 1, 1 }, { 0, 0, 1, 1 } }, new long[][] { { 0, 0, 1, 1 }, { 0, 0, 1, 1 } });
+    }
+
+    private ProductAutomaton.State<TableAutomaton.State, TableAutomaton.State> state(ProductAutomaton<TableAutomaton.State, TableAutomaton.State> product, int l, int r) {
+        // Product states are only created by the product itself.
+        for (ProductAutomaton.State<TableAutomaton.State, TableAutomaton.State> state : product.getStates()) {
+            if (state.left.id == l && state.right.id == r) {
+                return state;
+            }
+        }
+
+        throw new AssertionError("(" + l + ", " + r + ") not found.");
+    }
+
+    @Test
+    public void testGeneralisedBuchiProduct() throws Exception {
+        ProductAutomaton<TableAutomaton.State, TableAutomaton.State> product = ProductAutomaton.of(left, right);
+        product.generate();
+
+        assertTrue(product.getAcceptance() instanceof GeneralisedBuchiAcceptance);
+        assertEquals(2, product.getAcceptance().getAcceptanceSets());
+        assertEquals(4, product.size());
+
+        // Reading {1} marks set 0 of the right automaton, which is shifted to 1.
+        Map<Edge<ProductAutomaton.State<TableAutomaton.State, TableAutomaton.State>>, ValuationSet> row = product.getSuccessors(product.getInitialState());
+        assertEquals(4, row.size());
+        assertTrue(row.containsKey(Edge.of(state(product, 0, 0), 0b00L)));
+        assertTrue(row.containsKey(Edge.of(state(product, 1, 0), 0b01L)));
+        assertTrue(row.containsKey(Edge.of(state(product, 0, 1), 0b10L)));
+        assertTrue(row.containsKey(Edge.of(state(product, 1, 1), 0b11L)));
+    }
+
+    @Test
+    public void testProductAcceptance() throws Exception {
+        TableAutomaton<ParityAcceptance> parity = new TableAutomaton<>(new ParityAcceptance(2), factory, new int[][] { { 0, 0, 0, 0 } }, new long[][] { { 0b001, 0b010, 0b100, 0b001 } });
+        ProductAutomaton<TableAutomaton.State, TableAutomaton.State> product = ProductAutomaton.of(left, parity);
+        product.generate();
+
+        assertTrue(product.getAcceptance() instanceof ProductAcceptance);
+        assertEquals(1, ((ProductAcceptance) product.getAcceptance()).getOffset());
+        assertEquals(1 + parity.getAcceptance().getAcceptanceSets(), product.getAcceptance().getAcceptanceSets());
+
+        BitSet valuation = new BitSet();
+        valuation.set(1);
+        assertEquals(Edge.of(state(product, 0, 0), 0b1000L), product.getInitialState().getSuccessor(valuation));
+    }
+
+    @Test
+    public void testGetSuccessor() throws Exception {
+        ProductAutomaton<TableAutomaton.State, TableAutomaton.State> product = ProductAutomaton.of(left, right);
+        product.generate();
+
+        for (ProductAutomaton.State<TableAutomaton.State, TableAutomaton.State> state : product.getStates()) {
+            for (int letter = 0; letter < 4; letter++) {
+                BitSet valuation = BitSet.valueOf(new long[] { letter });
+                Edge<ProductAutomaton.State<TableAutomaton.State, TableAutomaton.State>> edge = state.getSuccessor(valuation);
+
+                assertEquals(product.getSuccessor(state, valuation), edge);
+                assertEquals(letter & 1, edge.successor.left.id);
+                assertEquals(letter >> 1, edge.successor.right.id);
+                assertEquals(letter, edge.getAcceptanceMask());
+            }
+        }
+    }
+
+    @Test
+    public void testMissingEdges() throws Exception {
+        TableAutomaton<BuchiAcceptance> partial = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 0, -1, 0, -1 } });
+        ProductAutomaton<TableAutomaton.State, TableAutomaton.State> product = ProductAutomaton.of(left, partial);
+        product.generate();
+
+        assertEquals(1, product.size());
+        assertNull(product.getInitialState().getSuccessor(BitSet.valueOf(new long[] { 1 })));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentFactories() throws Exception {
+        ProductAutomaton.of(left, new TableAutomaton<>(new BuchiAcceptance(), new BDDValuationSetFactory(2), new int[][] { { 0, 0, 0, 0 } }));
+    }
+}
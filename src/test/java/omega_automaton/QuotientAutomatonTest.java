@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import com.google.common.collect.ImmutableSet;
+import omega_automaton.acceptance.BuchiAcceptance;
+import omega_automaton.acceptance.GeneralisedRabinAcceptance;
+import omega_automaton.collections.valuationset.BDDValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class QuotientAutomatonTest {
+    private final ValuationSetFactory factory = new BDDValuationSetFactory(1);
+
+    @Test
+    public void testMerge() throws Exception {
+        // 1 and 2 only differ in the valuation leading to them.
+        TableAutomaton<BuchiAcceptance> automaton = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 1, 2 }, { 3, 0 }, { 3, 0 }, { 3, 3 } },
+            new long[][] { { 0, 0 }, { 0, 0 }, { 0, 0 }, { 1, 1 } });
+        QuotientAutomaton<TableAutomaton.State, BuchiAcceptance> quotient = QuotientAutomaton.of(automaton);
+
+        assertEquals(3, quotient.size());
+        assertEquals(automaton.getState(0), quotient.getInitialState());
+        assertEquals(automaton.getState(1), quotient.getRepresentative(automaton.getState(2)));
+        assertNull(quotient.getRepresentative(automaton.getState(4)));
+
+        Map<Edge<TableAutomaton.State>, ValuationSet> row = quotient.getSuccessors(automaton.getState(0));
+        assertEquals(Collections.singletonMap(Edge.of(automaton.getState(1), 0L), factory.createUniverseValuationSet()), row);
+    }
+
+    @Test
+    public void testMarksSeparate() throws Exception {
+        // 1 and 2 have the same successors, but different marks.
+        TableAutomaton<BuchiAcceptance> automaton = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 1, 2 }, { 0, 0 }, { 0, 0 } },
+            new long[][] { { 0, 0 }, { 0, 1 }, { 0, 0 } });
+        QuotientAutomaton<TableAutomaton.State, BuchiAcceptance> quotient = QuotientAutomaton.of(automaton);
+
+        assertEquals(3, quotient.size());
+        assertEquals(new HashSet<>(quotient.getRepresentatives().values()), quotient.getStates());
+    }
+
+    @Test
+    public void testChain() throws Exception {
+        // In the chain 0 -> 1 -> ... -> 5 -> 5 only the loop of 5 is marked,
+        // so all states differ in the distance to it.
+        int[][] successors = new int[6][];
+        long[][] marks = new long[6][];
+
+        for (int i = 0; i < 6; i++) {
+            successors[i] = new int[] { Math.min(i + 1, 5), Math.min(i + 1, 5) };
+            marks[i] = new long[] { i == 5 ? 1 : 0, i == 5 ? 1 : 0 };
+        }
+
+        assertEquals(6, QuotientAutomaton.of(new TableAutomaton<>(new BuchiAcceptance(), factory, successors, marks)).size());
+
+        // Without marks all states are equivalent.
+        TableAutomaton<BuchiAcceptance> unmarked = new TableAutomaton<>(new BuchiAcceptance(), factory, successors);
+        QuotientAutomaton<TableAutomaton.State, BuchiAcceptance> quotient = QuotientAutomaton.of(unmarked);
+        assertEquals(1, quotient.size());
+        assertEquals(ImmutableSet.of(Edge.of(unmarked.getState(0), 0L)), quotient.getSuccessors(unmarked.getState(0)).keySet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGeneralisedRabin() throws Exception {
+        QuotientAutomaton.of(new TableAutomaton<>(new GeneralisedRabinAcceptance<>(Collections.emptyList()), factory, new int[][] { { 0, 0 } }));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import omega_automaton.acceptance.BuchiAcceptance;
+import omega_automaton.collections.valuationset.BDDValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSet;
+import omega_automaton.collections.valuationset.ValuationSetScope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpillingTransitionMapTest {
+    private BDDValuationSetFactory factory;
+    private TableAutomaton<BuchiAcceptance> automaton;
+    private SpillingTransitionMap<TableAutomaton.State> map;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new BDDValuationSetFactory(1);
+        factory.setLeakTracking(true);
+        automaton = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 1, 0 }, { 2, 0 }, { 3, 3 } }, new long[][] { { 0, 1 }, { 0, 0 }, { 1, 1 } });
+        map = new SpillingTransitionMap<>(new StateCodec<TableAutomaton.State>() {
+            @Override
+            public void write(TableAutomaton.State state, DataOutput output) throws IOException {
+                output.writeInt(state.id);
+            }
+
+            @Override
+            public TableAutomaton.State read(DataInput input) throws IOException {
+                return automaton.getState(input.readInt());
+            }
+        }, factory, 1, null);
+
+        for (int i = 0; i < 3; i++) {
+            map.put(automaton.getState(i), automaton.getState(i).getSuccessors());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        map.close();
+        assertTrue(factory.getLeaks().isEmpty());
+    }
+
+    private void assertRow(int state) {
+        Map<Edge<TableAutomaton.State>, ValuationSet> expected = automaton.getState(state).getSuccessors();
+        assertEquals(expected, map.get(automaton.getState(state)));
+        expected.values().forEach(ValuationSet::free);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        assertEquals(3, map.size());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(map.containsKey(automaton.getState(i)));
+            assertRow(i);
+        }
+
+        assertNull(map.get(automaton.getState(3)));
+    }
+
+    @Test
+    public void testUnchangedRowsAreNotWrittenAgain() throws Exception {
+        assertRow(0);
+        assertRow(1);
+        long spilledBytes = map.getSpilledBytes();
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertRow(i);
+            }
+        }
+
+        assertEquals(spilledBytes, map.getSpilledBytes());
+    }
+
+    @Test
+    public void testChangedRowsAreWrittenAgain() throws Exception {
+        // Drop the edge 0 -> 0 and check that the change survives eviction.
+        Map<Edge<TableAutomaton.State>, ValuationSet> row = map.get(automaton.getState(0));
+        row.remove(Edge.of(automaton.getState(0), 1L)).free();
+        assertRow(1);
+
+        Map<Edge<TableAutomaton.State>, ValuationSet> reloaded = map.get(automaton.getState(0));
+        BitSet valuation = new BitSet();
+        assertEquals(1, reloaded.size());
+        assertTrue(reloaded.get(Edge.of(automaton.getState(1), 0L)).contains(valuation));
+        valuation.set(0);
+        assertFalse(reloaded.get(Edge.of(automaton.getState(1), 0L)).contains(valuation));
+    }
+
+    @Test
+    public void testEvictedRowStaysValidInScope() throws Exception {
+        Map<Edge<TableAutomaton.State>, ValuationSet> expected = automaton.getState(0).getSuccessors();
+
+        try (ValuationSetScope scope = ValuationSetScope.open()) {
+            // Loading row 1 evicts row 0, which is still read afterwards.
+            Map<Edge<TableAutomaton.State>, ValuationSet> row = map.get(automaton.getState(0));
+            assertRow(1);
+            assertEquals(expected, row);
+        }
+
+        expected.values().forEach(ValuationSet::free);
+        assertRow(0);
+    }
+
+    @Test
+    public void testPutDropsSpilledRow() throws Exception {
+        assertNull(map.put(automaton.getState(0), automaton.getState(2).getSuccessors()));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        map.remove(automaton.getState(0)).values().forEach(ValuationSet::free);
+        map.keySet().remove(automaton.getState(1));
+        assertEquals(1, map.size());
+        assertRow(2);
+    }
+}
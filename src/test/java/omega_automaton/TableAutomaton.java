@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton;
+
+import java.util.BitSet;
+
+import omega_automaton.acceptance.OmegaAcceptance;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+
+/**
+ * A deterministic automaton over the states 0 to n - 1 given by a table:
+ * reading valuation v, where bit i is the value of atomic proposition i, in
+ * state q leads to {@code successors[q][v]} with the acceptance marks
+ * {@code marks[q][v]}. A successor of -1 means that there is no edge.
+ */
+public class TableAutomaton<Acc extends OmegaAcceptance> extends Automaton<TableAutomaton.State, Acc> {
+
+    private final int[][] successors;
+    private final long[][] marks;
+
+    public TableAutomaton(Acc acceptance, ValuationSetFactory factory, int[][] successors, long[][] marks) {
+        super(acceptance, factory);
+        this.successors = successors;
+        this.marks = marks;
+    }
+
+    public TableAutomaton(Acc acceptance, ValuationSetFactory factory, int[][] successors) {
+        this(acceptance, factory, successors, new long[successors.length][successors[0].length]);
+    }
+
+    @Override
+    protected State generateInitialState() {
+        return getState(0);
+    }
+
+    public State getState(int id) {
+        return new State(id, this);
+    }
+
+    public static final class State implements AutomatonState<State> {
+
+        public final int id;
+        private final TableAutomaton<?> automaton;
+
+        State(int id, TableAutomaton<?> automaton) {
+            this.id = id;
+            this.automaton = automaton;
+        }
+
+        @Override
+        public ValuationSetFactory getFactory() {
+            return automaton.getFactory();
+        }
+
+        @Override
+        public Edge<State> getSuccessor(BitSet valuation) {
+            int letter = valuation.isEmpty() ? 0 : (int) valuation.toLongArray()[0];
+            int successor = automaton.successors[id][letter];
+            return successor == -1 ? null : Edge.of(automaton.getState(successor), automaton.marks[id][letter]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof State && ((State) o).id == id && ((State) o).automaton == automaton;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(id);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.acceptance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProductAcceptanceTest {
+
+    @Test
+    public void testShift() throws Exception {
+        // Parity with 3 colors is Fin(0) & (Inf(1) | Fin(2) & Inf(3)).
+        ProductAcceptance acceptance = new ProductAcceptance(new GeneralisedBuchiAcceptance(2), new ParityAcceptance(3), 2);
+
+        assertEquals(6, acceptance.getAcceptanceSets());
+        assertEquals("Inf(0) & Inf(1) & Fin(2) & (Inf(3) | Fin(4) & Inf(5))", acceptance.getBooleanExpression().toString());
+        assertNull(acceptance.getName());
+        assertTrue(acceptance.getNameExtra().isEmpty());
+    }
+
+    @Test
+    public void testOffsetBeyondLeftSets() throws Exception {
+        // The offset may reserve more sets than the left condition uses.
+        ProductAcceptance acceptance = new ProductAcceptance(new BuchiAcceptance(), new BuchiAcceptance(), 3);
+
+        assertEquals(4, acceptance.getAcceptanceSets());
+        assertEquals("Inf(0) & Inf(3)", acceptance.getBooleanExpression().toString());
+    }
+
+    @Test
+    public void testConstants() throws Exception {
+        ProductAcceptance acceptance = new ProductAcceptance(new AllAcceptance(), new NoneAcceptance(), 0);
+        assertEquals("t & f", acceptance.getBooleanExpression().toString());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.algorithms;
+
+import com.google.common.collect.ImmutableList;
+import omega_automaton.TableAutomaton;
+import omega_automaton.acceptance.GeneralisedBuchiAcceptance;
+import omega_automaton.collections.valuationset.BDDValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSetScope;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LassoCheckerTest {
+    private static final BitSet A = BitSet.valueOf(new long[] { 1 });
+    private static final BitSet NOT_A = new BitSet();
+
+    private TableAutomaton<GeneralisedBuchiAcceptance> automaton;
+
+    @Before
+    public void setUp() throws Exception {
+        // GF !a & GF a: reading !a marks set 0, reading a marks set 1. State 1
+        // is a sink reached by reading a in state 0 for the first time.
+        automaton = new TableAutomaton<>(new GeneralisedBuchiAcceptance(2), new BDDValuationSetFactory(1), new int[][] { { 0, 1 }, { 1, 1 } },
+            new long[][] { { 1, 0 }, { 1, 2 } });
+    }
+
+    @Test
+    public void testAccepts() throws Exception {
+        LassoChecker<TableAutomaton.State> checker = new LassoChecker<>(automaton);
+
+        assertTrue(checker.accepts(new LassoChecker.Lasso(ImmutableList.of(), ImmutableList.of(A, NOT_A))));
+        assertTrue(checker.accepts(new LassoChecker.Lasso(ImmutableList.of(NOT_A, A), ImmutableList.of(NOT_A, NOT_A, A))));
+        assertFalse(checker.accepts(new LassoChecker.Lasso(ImmutableList.of(), ImmutableList.of(A))));
+        assertFalse(checker.accepts(new LassoChecker.Lasso(ImmutableList.of(A), ImmutableList.of(NOT_A))));
+    }
+
+    @Test
+    public void testAcceptsParallel() throws Exception {
+        LassoChecker<TableAutomaton.State> checker = new LassoChecker<>(automaton);
+        List<LassoChecker.Lasso> words = ImmutableList.of(new LassoChecker.Lasso(ImmutableList.of(), ImmutableList.of(A, NOT_A)),
+            new LassoChecker.Lasso(ImmutableList.of(A, A), ImmutableList.of(A)), new LassoChecker.Lasso(ImmutableList.of(NOT_A), ImmutableList.of(NOT_A, A)));
+
+        assertArrayEquals(new boolean[] { true, false, true }, checker.accepts(words));
+        assertArrayEquals(checker.accepts(words), checker.acceptsParallel(words));
+    }
+
+    @Test
+    public void testNoInitialState() throws Exception {
+        TableAutomaton<GeneralisedBuchiAcceptance> automaton = new TableAutomaton<GeneralisedBuchiAcceptance>(new GeneralisedBuchiAcceptance(2), new BDDValuationSetFactory(1),
+            new int[][] { { 0, 0 } }, new long[][] { { 1, 2 } }) {
+            @Override
+            protected State generateInitialState() {
+                return null;
+            }
+        };
+
+        automaton.generate(automaton.getState(0));
+        LassoChecker<TableAutomaton.State> checker = new LassoChecker<>(automaton);
+        assertFalse(checker.accepts(new LassoChecker.Lasso(ImmutableList.of(), ImmutableList.of(A, NOT_A))));
+    }
+
+    @Test
+    public void testFree() throws Exception {
+        BDDValuationSetFactory factory = new BDDValuationSetFactory(1);
+        factory.setLeakTracking(true);
+        TableAutomaton<GeneralisedBuchiAcceptance> automaton = new TableAutomaton<>(new GeneralisedBuchiAcceptance(2), factory, new int[][] { { 0, 1 }, { 1, 1 } },
+            new long[][] { { 1, 0 }, { 1, 2 } });
+        LassoChecker<TableAutomaton.State> checker;
+
+        // The labels of the checker are not owned by a scope of the caller.
+        try (ValuationSetScope scope = ValuationSetScope.open()) {
+            checker = new LassoChecker<>(automaton);
+        }
+
+        automaton.free();
+        assertFalse(factory.getLeaks().isEmpty());
+        assertTrue(checker.accepts(new LassoChecker.Lasso(ImmutableList.of(), ImmutableList.of(A, NOT_A))));
+
+        checker.free();
+        assertTrue(factory.getLeaks().isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.algorithms;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import omega_automaton.Edge;
+import omega_automaton.TableAutomaton;
+import omega_automaton.acceptance.BuchiAcceptance;
+import omega_automaton.collections.TranSet;
+import omega_automaton.collections.valuationset.BDDValuationSetFactory;
+import omega_automaton.collections.valuationset.SynchronizedValuationSetFactory;
+import omega_automaton.collections.valuationset.ValuationSetFactory;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSCCAnalyserTest {
+    // The SCCs are {0, 1}, {2, 3}, {4}, {5, 6} and {7}; {4} and {5, 6} are
+    // unrelated and state 8 is not reachable.
+    private static final int[][] SUCCESSORS = { { 1, 2 }, { 0, 3 }, { 3, 4 }, { 2, 5 }, { 4, 4 }, { 6, 6 }, { 5, 7 }, { 7, 7 }, { 0, 0 } };
+
+    private static TableAutomaton<BuchiAcceptance> createAutomaton(ValuationSetFactory factory) {
+        TableAutomaton<BuchiAcceptance> automaton = new TableAutomaton<>(new BuchiAcceptance(), factory, SUCCESSORS);
+        automaton.generate();
+        return automaton;
+    }
+
+    @Test
+    public void testSCCsStates() throws Exception {
+        TableAutomaton<BuchiAcceptance> automaton = createAutomaton(new BDDValuationSetFactory(1));
+        assertFalse(automaton.allowsConcurrentReads());
+        assertSameSCCs(automaton, ForkJoinPool.commonPool());
+    }
+
+    @Test
+    public void testSCCsStatesConcurrentReads() throws Exception {
+        TableAutomaton<BuchiAcceptance> automaton = createAutomaton(new SynchronizedValuationSetFactory(new BDDValuationSetFactory(1)));
+        assertTrue(automaton.allowsConcurrentReads());
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            assertSameSCCs(automaton, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubSCCsTran() throws Exception {
+        // Both states loop on a and swap on !a.
+        ValuationSetFactory factory = new BDDValuationSetFactory(1);
+        TableAutomaton<BuchiAcceptance> automaton = new TableAutomaton<>(new BuchiAcceptance(), factory, new int[][] { { 1, 0 }, { 0, 1 } });
+        automaton.generate();
+        TranSet<TableAutomaton.State> scc = SCCAnalyser.sccToTran(automaton, automaton.getStates(), new TranSet<>(factory));
+
+        // Without the edge from 1 back to 0, {1} is reachable from {0}.
+        TranSet<TableAutomaton.State> forbidden = new TranSet<>(factory);
+        forbidden.addAll(automaton.getState(1), factory.createValuationSet(new BitSet()));
+
+        List<TranSet<TableAutomaton.State>> expected = SCCAnalyser.subSCCsTran(automaton, scc, forbidden);
+        assertEquals(2, expected.size());
+        assertEquals(ImmutableSet.of(automaton.getState(1)), expected.get(0).asMap().keySet());
+        assertEquals(expected, ParallelSCCAnalyser.subSCCsTran(automaton, scc, forbidden));
+    }
+
+    private static void assertSameSCCs(TableAutomaton<BuchiAcceptance> automaton, ForkJoinPool pool) {
+        List<Set<TableAutomaton.State>> expected = SCCAnalyser.SCCsStates(automaton);
+        List<Set<TableAutomaton.State>> actual = ParallelSCCAnalyser.SCCsStates(automaton, pool);
+
+        assertEquals(5, expected.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        assertTopological(automaton, expected);
+        assertTopological(automaton, actual);
+
+        // The SCC of the initial state reaches all others.
+        for (List<Set<TableAutomaton.State>> sccs : ImmutableList.of(expected, actual)) {
+            assertEquals(ImmutableSet.of(automaton.getState(0), automaton.getState(1)), sccs.get(sccs.size() - 1));
+        }
+    }
+
+    /**
+     * Checks that each SCC is listed after the SCCs reachable from it.
+     */
+    private static void assertTopological(TableAutomaton<BuchiAcceptance> automaton, List<Set<TableAutomaton.State>> sccs) {
+        for (int i = 0; i < sccs.size(); i++) {
+            for (TableAutomaton.State state : sccs.get(i)) {
+                for (Edge<TableAutomaton.State> edge : automaton.getSuccessors(state).keySet()) {
+                    int j = 0;
+
+                    while (!sccs.get(j).contains(edge.successor)) {
+                        j++;
+                    }
+
+                    assertTrue(state + " -> " + edge.successor, j <= i);
+                }
+            }
+        }
+    }
+}
@@ -21,9 +21,21 @@ import com.google.common.collect.ImmutableSet;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Set;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class BDDValuationSetFactoryTest {
     private BDDValuationSetFactory factory;
@@ -44,4 +56,109 @@ public class BDDValuationSetFactoryTest {
     public void testCreateEmptyValuationSet() throws Exception {
         assertEquals(0, factory.createEmptyValuationSet().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testReorder() throws Exception {
+        BDDValuationSetFactory factory = new BDDValuationSetFactory(4, true);
+        ValuationSet set = factory.createEmptyValuationSet();
+
+        // (0 & 2) | (1 & 3) needs fewer nodes if the pairs are adjacent.
+        for (int i = 0; i < 2; i++) {
+            BitSet pair = new BitSet();
+            pair.set(i);
+            pair.set(i + 2);
+            set.addAll(factory.createValuationSet(pair, pair));
+        }
+
+        ValuationSet copy = set.copy();
+        Set<ValuationSet> hashed = new HashSet<>();
+        hashed.add(set);
+        assertEquals(7, set.size());
+        BDDValuationSetFactory.ReorderingStatistics statistics = factory.reorder(new int[] { 0, 2, 1, 3 });
+
+        assertArrayEquals(new int[] { 0, 2, 1, 3 }, factory.getOrder());
+        assertTrue(statistics.getNodesAfter() < statistics.getNodesBefore());
+        assertEquals(copy, set);
+        assertTrue(hashed.contains(set));
+        assertTrue(hashed.contains(copy));
+        assertEquals(7, set.size());
+        assertEquals("0 & 2 | 1 & 3", set.toString());
+        assertTrue(factory.searchOrder().getNodesAfter() <= statistics.getNodesAfter());
+    }
+
+    @Test
+    public void testCountModelsCached() throws Exception {
+        BDDValuationSetFactory factory = new BDDValuationSetFactory(40);
+        BitSet first = new BitSet();
+        first.set(0);
+        ValuationSet set = factory.createValuationSet(first, first);
+        ValuationSet other = factory.createValuationSet(new BitSet(), first);
+
+        assertEquals(BigInteger.ONE.shiftLeft(39), set.countModels());
+        set.addAll(other);
+        assertEquals(BigInteger.ONE.shiftLeft(40), set.countModels());
+
+        // Counts cached for freed sets do not leak into new sets.
+        for (int i = 0; i < 40; i++) {
+            BitSet proposition = new BitSet();
+            proposition.set(i);
+            ValuationSet literal = factory.createValuationSet(new BitSet(), proposition);
+            assertEquals(BigInteger.ONE.shiftLeft(39), literal.countModels());
+            literal.complement().free();
+            literal.free();
+        }
+
+        assertEquals(BigInteger.ONE.shiftLeft(39), other.countModels());
+    }
+
+    @Test
+    public void testReadRejectsCorruptedStreams() throws Exception {
+        // One node (proposition, low, high) followed by the id of the root.
+        ValuationSet literal = factory.read(stream(1, 0, 0, 1, 2));
+        BitSet valuation = new BitSet();
+        assertFalse(literal.contains(valuation));
+        valuation.set(0);
+        assertTrue(literal.contains(valuation));
+
+        assertReadFails(stream(-1));
+        assertReadFails(stream(1, 2, 0, 1, 2));
+        assertReadFails(stream(1, -1, 0, 1, 2));
+        assertReadFails(stream(2, 0, 0, 3, 2, 1, 0, 1, 3));
+        assertReadFails(stream(1, 0, 0, -1, 2));
+        assertReadFails(stream(1, 0, 0, 1, 3));
+        assertReadFails(stream(Integer.MAX_VALUE, 0, 0, 1));
+
+        assertEquals(1, factory.readAll(stream(1, 0, 0, 1, 1, 2)).size());
+        assertReadAllFails(stream(0, -1));
+        assertReadAllFails(stream(0, 1, 2));
+    }
+
+    private static DataInputStream stream(int... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        for (int value : values) {
+            output.writeInt(value);
+        }
+
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private void assertReadFails(DataInputStream input) {
+        try {
+            factory.read(input);
+            fail();
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    private void assertReadAllFails(DataInputStream input) {
+        try {
+            factory.readAll(input);
+            fail();
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
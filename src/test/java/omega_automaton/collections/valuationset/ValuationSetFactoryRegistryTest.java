@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016  (See AUTHORS)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package omega_automaton.collections.valuationset;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ValuationSetFactoryRegistryTest {
+
+    @Test
+    public void testAcquireAndRelease() throws Exception {
+        ValuationSetFactoryRegistry registry = new ValuationSetFactoryRegistry();
+        BDDValuationSetFactory ab = registry.acquire(ImmutableList.of("a", "b"));
+
+        assertSame(ab, registry.acquire(ImmutableList.of("a", "b")));
+        assertNotSame(ab, registry.acquire(ImmutableList.of("b", "a")));
+        assertEquals(2, registry.getReferences(ab));
+        assertEquals(2, registry.size());
+
+        registry.release(ab);
+        registry.release(ab);
+        assertEquals(0, registry.getReferences(ab));
+        assertEquals(1, registry.size());
+        assertNotSame(ab, registry.acquire(ImmutableList.of("a", "b")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReleaseUnknown() throws Exception {
+        new ValuationSetFactoryRegistry().release(new BDDValuationSetFactory(1));
+    }
+}
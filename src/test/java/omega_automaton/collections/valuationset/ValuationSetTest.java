@@ -23,8 +23,17 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Before;
@@ -33,19 +42,22 @@ import org.junit.Test;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableBiMap;
 
+import omega_automaton.collections.Tuple;
+
 public abstract class ValuationSetTest {
 
     private ValuationSet universe;
     private ValuationSet empty;
     private ValuationSet abcd;
     private ValuationSet containsA;
+    private ValuationSetFactory factory;
 
     public abstract ValuationSetFactory setUpFactory(BiMap<String, Integer> aliases);
 
     @Before
     public void setUp() throws Exception {
         BiMap<String, Integer> aliases = ImmutableBiMap.of("a", 0, "b", 1, "c", 2, "d", 3);
-        ValuationSetFactory factory = setUpFactory(aliases);
+        factory = setUpFactory(aliases);
 
         empty = factory.createEmptyValuationSet();
         universe = factory.createUniverseValuationSet();
@@ -100,4 +112,100 @@ public abstract class ValuationSetTest {
             fail("empty should be empty, but it contains " + valuation);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCubes() {
+        for (ValuationSet valuationSet : Arrays.asList(universe, empty, abcd, containsA, abcd.complement())) {
+            ValuationSet union = factory.createEmptyValuationSet();
+            BigInteger count = BigInteger.ZERO;
+            Iterator<Tuple<BitSet, BitSet>> cubes = valuationSet.cubes();
+
+            while (cubes.hasNext()) {
+                Tuple<BitSet, BitSet> cube = cubes.next();
+                ValuationSet cubeSet = factory.createValuationSet(cube.left, cube.right);
+                assertFalse(union.intersects(cubeSet));
+                count = count.add(cubeSet.countModels());
+                union.addAllWith(cubeSet);
+            }
+
+            assertEquals(valuationSet, union);
+            assertEquals(valuationSet.countModels(), count);
+        }
+    }
+
+    @Test
+    public void testCountModels() {
+        assertEquals(BigInteger.valueOf(16), universe.countModels());
+        assertEquals(BigInteger.ZERO, empty.countModels());
+        assertEquals(BigInteger.ONE, abcd.countModels());
+        assertEquals(BigInteger.valueOf(8), containsA.countModels());
+        assertEquals(15, abcd.complement().size());
+    }
+
+    @Test
+    public void testUnionAndIntersection() {
+        List<ValuationSet> sets = Arrays.asList(abcd, containsA, abcd.complement());
+        assertEquals(universe, factory.union(sets));
+        assertEquals(empty, factory.intersection(sets));
+        assertEquals(abcd, factory.intersection(Arrays.asList(abcd, containsA)));
+        assertEquals(empty, factory.union(Collections.emptyList()));
+        assertEquals(universe, factory.intersection(Collections.emptyList()));
+
+        BitSet a = new BitSet();
+        a.set(0);
+        BitSet b = new BitSet();
+        b.set(1);
+        BitSet ab = new BitSet();
+        ab.set(0, 2);
+        ValuationSet aOrB = factory.createValuationSet(Arrays.asList(a, b, ab), ab);
+        assertEquals(12, aOrB.size());
+        assertTrue(aOrB.containsAll(containsA));
+    }
+
+    @Test
+    public void testToExpression() {
+        assertEquals("t", universe.toString());
+        assertEquals("f", empty.toString());
+        assertEquals("0", containsA.toString());
+        // The irredundant cover of the complement has one single-literal
+        // cube per proposition of abcd, not the disjoint cubes of a Shannon
+        // expansion.
+        assertEquals("!0 | !1 | !2 | !3", abcd.complement().toString());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        for (ValuationSet valuationSet : Arrays.asList(universe, empty, abcd, containsA, abcd.complement())) {
+            factory.write(valuationSet, output);
+        }
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        for (ValuationSet valuationSet : Arrays.asList(universe, empty, abcd, containsA, abcd.complement())) {
+            assertEquals(valuationSet, factory.read(input));
+        }
+    }
+
+    @Test
+    public void testBatchSerialization() throws Exception {
+        List<ValuationSet> valuationSets = Arrays.asList(universe, empty, abcd, containsA, abcd.complement());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        factory.writeAll(valuationSets, new DataOutputStream(bytes));
+
+        assertEquals(valuationSets, factory.readAll(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void testTransfer() {
+        BDDValuationSetFactory target = new BDDValuationSetFactory(5);
+        ValuationSet transferred = target.transfer(containsA, new int[] { 4, 3, 2, 1 });
+
+        BitSet e = new BitSet();
+        e.set(4);
+        assertEquals(target.createValuationSet(e, e), transferred);
+        assertEquals(abcd, factory.transfer(target.transfer(abcd, null), null));
+    }
+}